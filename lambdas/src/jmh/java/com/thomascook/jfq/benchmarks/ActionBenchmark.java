@@ -0,0 +1,63 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.thomascook.jfq.lambdas.Action;
+import org.apache.commons.lang3.RandomUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.*;
+
+/**
+ * {@link Action#toString()} and {@link Action#random()} next to the way they used to be implemented. Random
+ * benchmarks run in 4 threads since contention on a shared Random is the point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ActionBenchmark {
+
+    private Action action = Action.JUMPS_ON;
+    private final SplittableRandom random = new SplittableRandom();
+
+    @Benchmark
+    public String label() {
+        return action.toString();
+    }
+
+    @Benchmark
+    public String labelComputedOnEveryCall() {
+        return replace(lowerCase(action.name()), "_", SPACE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Action random() {
+        return Action.random();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Action randomWithSplittableRandom() {
+        return Action.random(random);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Action randomWithSharedRandom() {
+        return Action.values()[RandomUtils.nextInt(0, Action.values().length)];
+    }
+}
@@ -0,0 +1,58 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.thomascook.jfq.cucumber.domains.cooking.Amount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Amount} is immutable, so every operation is an allocation unless escape analysis removes it. Check
+ * {@code gc.alloc.rate.norm} in the results along with the time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AmountBenchmark {
+
+    // not final, so that JIT can't fold them
+    private Amount stock = new Amount(1_000_000);
+    private Amount portion = new Amount(3);
+
+    @Benchmark
+    public Amount add() {
+        return stock.add(portion);
+    }
+
+    @Benchmark
+    public Amount subtract() {
+        return stock.subtract(portion);
+    }
+
+    @Benchmark
+    public boolean isAtLeast() {
+        return stock.isAtLeast(3);
+    }
+
+    /**
+     * The pattern Example uses while cooking: check, subtract, replace
+     */
+    @Benchmark
+    public Amount addThenSubtractChain() {
+        Amount result = stock;
+        for (int i = 0; i < 16; i++) {
+            result = result.add(portion).subtract(portion).subtract(portion);
+        }
+        return result;
+    }
+}
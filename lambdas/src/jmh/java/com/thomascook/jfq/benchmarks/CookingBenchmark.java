@@ -0,0 +1,66 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.thomascook.jfq.cucumber.binding.Example;
+import com.thomascook.jfq.cucumber.domains.cooking.Recipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Example#cook(String)} over recipes with many instructions. Every iteration gets a fresh kitchen with stock
+ * big enough for the whole iteration, so nothing but cooking itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CookingBenchmark {
+
+    private static final String[] INGREDIENTS = {"egg", "flour", "milk", "sugar", "butter", "salt", "apple", "cream"};
+    private static final String[] ACTIONS = {"add", "mix", "whip", "bake", "pour"};
+
+    @Param({"10", "1000", "10000"})
+    private int instructions;
+
+    private Recipe recipe;
+    private Example kitchen;
+
+    @Setup(Level.Trial)
+    public void writeRecipe() {
+        recipe = new Recipe("pie", 60, "hard");
+        for (int i = 0; i < instructions; i++) {
+            recipe.withInstruction(new Recipe.Instruction(INGREDIENTS[i % INGREDIENTS.length], 1 + i % 3,
+                    ACTIONS[i % ACTIONS.length]));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fillKitchen() {
+        kitchen = new Example();
+        kitchen.setUp();
+        for (String ingredient : INGREDIENTS) {
+            kitchen.addIngredient(Integer.MAX_VALUE / 2, ingredient);
+        }
+        kitchen.useRecipe(Collections.singletonList(recipe));
+    }
+
+    @Benchmark
+    public Example cook() {
+        kitchen.cook("pie");
+        return kitchen;
+    }
+}
@@ -0,0 +1,53 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.thomascook.jfq.cucumber.domains.cooking.Recipe;
+import cucumber.api.DataTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding of a DataTable to {@link Recipe.Instruction}s, the thing Example#collectRecipeDetails does with the
+ * 'the recipe is' table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DataTableBenchmark {
+
+    @Param({"5", "500"})
+    private int rows;
+
+    private DataTable table;
+
+    @Setup
+    public void createTable() {
+        List<List<String>> raw = new ArrayList<>();
+        raw.add(Arrays.asList("ingredient", "amount", "action"));
+        for (int i = 0; i < rows; i++) {
+            raw.add(Arrays.asList("egg", String.valueOf(1 + i % 5), "whip"));
+        }
+        table = DataTable.create(raw);
+    }
+
+    @Benchmark
+    public List<Recipe.Instruction> asList() {
+        return table.asList(Recipe.Instruction.class);
+    }
+}
@@ -0,0 +1,67 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.thomascook.jfq.http.RequestBean;
+import com.thomascook.jfq.http.ResponseBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What RestTemplate does with a {@link RequestBean} going out and a {@link ResponseBean} coming back. ObjectMapper is
+ * shared as it should be, {@code newMapperPerCall} shows what creating one per request costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JacksonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter writer = objectMapper.writerFor(RequestBean.class);
+    private final ObjectReader reader = objectMapper.readerFor(ResponseBean.class);
+
+    private RequestBean request;
+    private byte[] json;
+
+    @Setup
+    public void prepare() throws IOException {
+        request = new RequestBean("some text", 234);
+        json = writer.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public ResponseBean deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public ResponseBean roundTrip() throws IOException {
+        return reader.readValue(writer.writeValueAsBytes(request));
+    }
+
+    @Benchmark
+    public ResponseBean newMapperPerCall() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readValue(mapper.writeValueAsBytes(request), ResponseBean.class);
+    }
+}
@@ -0,0 +1,119 @@
+package com.thomascook.jfq.benchmarks;
+
+import com.thomascook.jfq.lambdas.Action;
+import com.thomascook.jfq.lambdas.Animal;
+import com.thomascook.jfq.lambdas.AnimalColumns;
+import com.thomascook.jfq.lambdas.ColourGroups;
+import com.thomascook.jfq.lambdas.PhraseBuilder;
+import com.thomascook.jfq.lambdas.PhraseTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Solutions of the LambdasTest tasks on bigger inputs, next to their specialized counterparts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StreamPipelineBenchmark {
+
+    // same words as in LambdasTest#testBasicStreamAPI
+    private static final String[] WORDS = {"QW5k", "elpaeg==", "dGhpcw==", "aXM=", "b2xvbG96eg==", "aG93", "d2U=",
+            "a25vdw==", "RHpSTkdTZGZn", "dGhl", "d29ybGQ=", "dG8=", "YmU=", "YmFuYW5hLXNoYXBl"};
+    private static final String[] KINDS = {"crocodile", "sheep", "dog", "cow", "cat", "mouse", "lion", "antelope"};
+    private static final String[] COLOURS = {"green", "white", "brown", "red", "black", "grey"};
+
+    @Param({"1000", "1000000"})
+    private int size;
+
+    private List<String> words;
+    private List<Animal> animals;
+    private AnimalColumns columns;
+
+    private final PhraseBuilder lambda = (first, second, action) ->
+            first.getDescription() + " " + first.getKind() + " " + action + " the " + second.getDescription() + " " + second.getKind();
+    private final PhraseTemplate template = PhraseTemplate.compile(PhraseTemplate.DEFAULT);
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        words = new ArrayList<>(size);
+        animals = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            words.add(WORDS[i % WORDS.length]);
+            animals.add(new Animal(KINDS[random.nextInt(KINDS.length)], COLOURS[random.nextInt(COLOURS.length)]));
+        }
+        columns = AnimalColumns.of(animals);
+    }
+
+    @Benchmark
+    public List<String> decodeAndFilter() {
+        return words.stream()
+                .map(word -> new String(Base64.getDecoder().decode(word), StandardCharsets.UTF_8))
+                .filter(word -> !word.contains("z") && !word.contains("Z"))
+                .collect(toList());
+    }
+
+    @Benchmark
+    public List<String> decodeAndFilterParallel() {
+        return words.parallelStream()
+                .map(word -> new String(Base64.getDecoder().decode(word), StandardCharsets.UTF_8))
+                .filter(word -> !word.contains("z") && !word.contains("Z"))
+                .collect(toList());
+    }
+
+    @Benchmark
+    public Map<String, List<String>> groupByColour() {
+        return animals.stream().collect(groupingBy(Animal::getDescription, mapping(Animal::getKind, toList())));
+    }
+
+    @Benchmark
+    public ColourGroups groupByColourColumnar() {
+        return columns.groupKindsByColour();
+    }
+
+    @Benchmark
+    public int phrasesWithLambda() {
+        int length = 0;
+        for (int i = 1; i < size; i++) {
+            length += lambda.biuld(animals.get(i - 1), animals.get(i), Action.LIKES).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int phrasesWithTemplate() {
+        StringBuilder out = new StringBuilder(128);
+        int length = 0;
+        for (int i = 1; i < size; i++) {
+            out.setLength(0);
+            template.appendTo(out, animals.get(i - 1), animals.get(i), Action.LIKES);
+            length += out.length();
+        }
+        return length;
+    }
+}
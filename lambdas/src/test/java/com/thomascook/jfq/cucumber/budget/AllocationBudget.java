@@ -0,0 +1,74 @@
+package com.thomascook.jfq.cucumber.budget;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Limits declared with scenario or feature tags:
+ * <pre>
+ *   &#64;MaxAllocatedMB=64   bytes the scenario may allocate, hooks included
+ *   &#64;MaxGcCount=1        garbage collections that may happen while the scenario runs
+ * </pre>
+ * If the same limit comes both from the feature and the scenario, the strictest one wins.
+ */
+public class AllocationBudget {
+
+    static final String MAX_ALLOCATED_MB = "@MaxAllocatedMB=";
+    static final String MAX_GC_COUNT = "@MaxGcCount=";
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long maxBytes;
+    private final long maxGcCount;
+
+    AllocationBudget(long maxBytes, long maxGcCount) {
+        this.maxBytes = maxBytes;
+        this.maxGcCount = maxGcCount;
+    }
+
+    public static AllocationBudget fromTags(Collection<String> tags) {
+        Validate.notNull(tags);
+        long maxBytes = UNLIMITED;
+        long maxGcCount = UNLIMITED;
+        for (String tag : tags) {
+            if (tag.startsWith(MAX_ALLOCATED_MB)) {
+                maxBytes = Math.min(maxBytes, parse(tag, MAX_ALLOCATED_MB) * 1024 * 1024);
+            } else if (tag.startsWith(MAX_GC_COUNT)) {
+                maxGcCount = Math.min(maxGcCount, parse(tag, MAX_GC_COUNT));
+            }
+        }
+        return new AllocationBudget(maxBytes, maxGcCount);
+    }
+
+    private static long parse(String tag, String prefix) {
+        try {
+            long value = Long.parseLong(tag.substring(prefix.length()));
+            Validate.isTrue(value >= 0, "Negative budget in %s", tag);
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Budget tag " + tag + " should look like " + prefix + "<number>", e);
+        }
+    }
+
+    public boolean isLimited() {
+        return maxBytes != UNLIMITED || maxGcCount != UNLIMITED;
+    }
+
+    /**
+     * @return what is over the budget, empty if the scenario fits
+     */
+    public List<String> violations(ScenarioAllocations allocations) {
+        List<String> violations = new ArrayList<>();
+        if (allocations.getAllocatedBytes() > maxBytes) {
+            violations.add(String.format("allocated %.2f MB, budget is %d MB",
+                    allocations.getAllocatedBytes() / (1024.0 * 1024.0), maxBytes / (1024 * 1024)));
+        }
+        if (allocations.getGcCount() > maxGcCount) {
+            violations.add(String.format("%d GCs happened, budget is %d", allocations.getGcCount(), maxGcCount));
+        }
+        return violations;
+    }
+}
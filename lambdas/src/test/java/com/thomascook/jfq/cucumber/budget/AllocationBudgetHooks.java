@@ -0,0 +1,49 @@
+package com.thomascook.jfq.cucumber.budget;
+
+import cucumber.api.Scenario;
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Measures allocations of every scenario and fails those that are over the {@link AllocationBudget} declared by
+ * their tags. Add this package to the glue to enable it and register {@link StepAllocationPlugin} to see which steps
+ * allocated what.
+ * <p>
+ * Order 0 makes these hooks wrap all the others: the @Before runs first, the @After runs last.
+ */
+public class AllocationBudgetHooks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AllocationBudgetHooks.class);
+
+    @Before(order = 0)
+    public void startMeasuring(Scenario scenario) {
+        ScenarioAllocations.start(scenario.getName());
+    }
+
+    @After(order = 0)
+    public void checkBudget(Scenario scenario) {
+        ScenarioAllocations allocations = ScenarioAllocations.finish();
+        if (allocations == null) {
+            return;
+        }
+        AllocationBudget budget = AllocationBudget.fromTags(scenario.getSourceTagNames());
+        if (!budget.isLimited()) {
+            LOG.debug("{}", allocations);
+            return;
+        }
+
+        List<String> violations = budget.violations(allocations);
+        if (violations.isEmpty()) {
+            LOG.info("{}", allocations);
+        } else {
+            String message = "Scenario '" + scenario.getName() + "' is over budget: " + String.join(", ", violations)
+                    + "\n" + allocations.breakdown();
+            scenario.write(message);
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.thomascook.jfq.cucumber.budget;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AllocationBudgetTest {
+
+    // keeps allocations from being optimized away
+    private byte[] garbage;
+
+    @After
+    public void tearDown() {
+        ScenarioAllocations.finish();
+    }
+
+    @Test
+    public void noTagsNoLimits() {
+        AllocationBudget budget = AllocationBudget.fromTags(Arrays.asList("@HooksExamples", "@SmokeTest"));
+
+        assertFalse(budget.isLimited());
+    }
+
+    @Test
+    public void strictestLimitWins() {
+        AllocationBudget budget = AllocationBudget.fromTags(Arrays.asList("@MaxAllocatedMB=64", "@MaxAllocatedMB=1"));
+
+        List<String> violations = budget.violations(scenarioAllocating(2));
+
+        assertEquals(1, violations.size());
+        assertTrue(violations.get(0), violations.get(0).endsWith("budget is 1 MB"));
+    }
+
+    @Test
+    public void withinBudget() {
+        AllocationBudget budget = AllocationBudget.fromTags(Collections.singletonList("@MaxAllocatedMB=64"));
+
+        assertTrue(budget.violations(scenarioAllocating(2)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void brokenTag() {
+        AllocationBudget.fromTags(Collections.singletonList("@MaxAllocatedMB=lots"));
+    }
+
+    @Test
+    public void breakdownByStep() {
+        ScenarioAllocations allocations = scenarioAllocating(3);
+
+        assertEquals(2, allocations.getSteps().size());
+        ScenarioAllocations.StepAllocation allocating = allocations.getSteps().get(1);
+        assertEquals("When it allocates", allocating.getStep());
+        assertTrue(allocating.getAllocatedBytes() >= 3 * 1024 * 1024);
+        assertTrue(allocations.getSteps().get(0).getAllocatedBytes() < 1024 * 1024);
+        assertTrue(allocations.breakdown(), allocations.breakdown().contains("When it allocates"));
+    }
+
+    private ScenarioAllocations scenarioAllocating(int megabytes) {
+        ScenarioAllocations.start("allocating");
+        ScenarioAllocations.current().stepScheduled("Given nothing");
+        ScenarioAllocations.current().stepScheduled("When it allocates");
+
+        ScenarioAllocations.current().stepStarted();
+        ScenarioAllocations.current().stepFinished();
+
+        ScenarioAllocations.current().stepStarted();
+        garbage = new byte[megabytes * 1024 * 1024];
+        ScenarioAllocations.current().stepFinished();
+
+        return ScenarioAllocations.finish();
+    }
+}
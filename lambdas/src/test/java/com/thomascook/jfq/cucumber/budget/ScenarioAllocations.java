@@ -0,0 +1,177 @@
+package com.thomascook.jfq.cucumber.budget;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Bytes allocated by the thread running a scenario and GCs that happened meanwhile, in total and step by step.
+ * <p>
+ * Every thread runs at most one scenario at a time, so the scenario being measured is kept in a thread local:
+ * {@link AllocationBudgetHooks} starts and finishes it, {@link StepAllocationPlugin} marks steps in between.
+ * Allocated bytes are per thread, GC counts are per JVM, so the latter include collections caused by other threads.
+ */
+public class ScenarioAllocations {
+
+    private static final ThreadLocal<ScenarioAllocations> CURRENT = new ThreadLocal<>();
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String scenario;
+    private final long startBytes;
+    private final long startGcs;
+
+    // step names come from the formatter before steps are run, background steps first
+    private final Deque<String> scheduledSteps = new ArrayDeque<>();
+    private final List<StepAllocation> steps = new ArrayList<>();
+    private String runningStep;
+    private long stepStartBytes;
+    private long stepStartGcs;
+
+    private long allocatedBytes = -1;
+    private long gcCount = -1;
+
+    private ScenarioAllocations(String scenario) {
+        this.scenario = scenario;
+        this.startGcs = gcCount();
+        this.startBytes = allocatedBytes();
+    }
+
+    public static ScenarioAllocations start(String scenario) {
+        ScenarioAllocations allocations = new ScenarioAllocations(scenario);
+        CURRENT.set(allocations);
+        return allocations;
+    }
+
+    /**
+     * @return scenario being measured by the current thread or null
+     */
+    public static ScenarioAllocations current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops measuring the scenario run by the current thread
+     *
+     * @return finished scenario or null if nothing was started
+     */
+    public static ScenarioAllocations finish() {
+        ScenarioAllocations allocations = CURRENT.get();
+        CURRENT.remove();
+        if (allocations != null) {
+            allocations.gcCount = gcCount() - allocations.startGcs;
+            allocations.allocatedBytes = allocatedBytes() - allocations.startBytes;
+        }
+        return allocations;
+    }
+
+    void stepScheduled(String step) {
+        scheduledSteps.add(step);
+    }
+
+    void stepStarted() {
+        runningStep = scheduledSteps.isEmpty() ? "<unknown step>" : scheduledSteps.poll();
+        stepStartGcs = gcCount();
+        stepStartBytes = allocatedBytes();
+    }
+
+    void stepFinished() {
+        long bytes = allocatedBytes() - stepStartBytes;
+        if (runningStep != null) {
+            steps.add(new StepAllocation(runningStep, bytes, gcCount() - stepStartGcs));
+            runningStep = null;
+        }
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    /**
+     * @return bytes allocated by the scenario including hooks or -1 if it is not finished yet
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Empty unless {@link StepAllocationPlugin} is registered
+     */
+    public List<StepAllocation> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public String breakdown() {
+        StringBuilder breakdown = new StringBuilder();
+        long stepBytes = 0;
+        long stepGcs = 0;
+        for (StepAllocation step : steps) {
+            append(breakdown, step.getStep(), step.getAllocatedBytes(), step.getGcCount());
+            stepBytes += step.getAllocatedBytes();
+            stepGcs += step.getGcCount();
+        }
+        if (steps.isEmpty()) {
+            breakdown.append("  (register ").append(StepAllocationPlugin.class.getName())
+                    .append(" as a plugin to see steps)\n");
+        }
+        append(breakdown, "hooks and runner", allocatedBytes - stepBytes, gcCount - stepGcs);
+        append(breakdown, "total", allocatedBytes, gcCount);
+        return breakdown.toString();
+    }
+
+    private static void append(StringBuilder breakdown, String what, long bytes, long gcs) {
+        breakdown.append(String.format("  %10.2f MB %3d GC  %s%n", bytes / (1024.0 * 1024.0), gcs, what));
+    }
+
+    @Override
+    public String toString() {
+        return scenario + ":\n" + breakdown();
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // -1 means the collector doesn't count
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    public static class StepAllocation {
+
+        private final String step;
+        private final long allocatedBytes;
+        private final long gcCount;
+
+        StepAllocation(String step, long allocatedBytes, long gcCount) {
+            this.step = step;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+        }
+
+        public String getStep() {
+            return step;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.thomascook.jfq.cucumber.budget;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+import java.util.List;
+
+/**
+ * Cucumber 1.2 has no step hooks, so steps are marked by a plugin:
+ * <pre>
+ *   &#64;CucumberOptions(plugin = "com.thomascook.jfq.cucumber.budget.StepAllocationPlugin", ...)
+ * </pre>
+ * Cucumber reports every step to the formatter before running it, then calls {@link #match(Match)} right before
+ * and {@link #result(Result)} right after the step, all in the thread running the scenario.
+ * Does nothing for scenarios {@link AllocationBudgetHooks} don't measure.
+ */
+public class StepAllocationPlugin implements Formatter, Reporter {
+
+    @Override
+    public void step(Step step) {
+        ScenarioAllocations allocations = ScenarioAllocations.current();
+        if (allocations != null) {
+            allocations.stepScheduled(step.getKeyword() + step.getName());
+        }
+    }
+
+    @Override
+    public void match(Match match) {
+        ScenarioAllocations allocations = ScenarioAllocations.current();
+        if (allocations != null) {
+            allocations.stepStarted();
+        }
+    }
+
+    @Override
+    public void result(Result result) {
+        ScenarioAllocations allocations = ScenarioAllocations.current();
+        if (allocations != null) {
+            allocations.stepFinished();
+        }
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void uri(String uri) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges Cucumber JSON reports of the forks into one. A fork reports a feature every time it runs one of its
+ * scenarios, so features are joined by uri and their scenarios, each with its background, are put back in the order
+ * of the feature file. Features are sorted by uri, so the merged report doesn't depend on which fork was the first.
+ */
+class ReportMerger {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    void merge(List<Path> reports, Path merged) throws IOException {
+        Validate.notNull(reports);
+        Validate.notNull(merged);
+        Map<String, ObjectNode> features = new TreeMap<>();
+        Map<String, List<List<JsonNode>>> scenarios = new HashMap<>();
+
+        for (Path report : reports) {
+            // a fork that died doesn't leave a report
+            if (!Files.exists(report) || Files.size(report) == 0) {
+                continue;
+            }
+            for (JsonNode feature : objectMapper.readTree(report.toFile())) {
+                String uri = feature.path("uri").asText();
+                features.putIfAbsent(uri, (ObjectNode) feature.deepCopy());
+                List<List<JsonNode>> featureScenarios = scenarios.computeIfAbsent(uri, key -> new ArrayList<>());
+                List<JsonNode> withBackground = new ArrayList<>();
+                for (JsonNode element : feature.path("elements")) {
+                    withBackground.add(element);
+                    if (!"background".equals(element.path("type").asText())) {
+                        featureScenarios.add(withBackground);
+                        withBackground = new ArrayList<>();
+                    }
+                }
+            }
+        }
+
+        ArrayNode result = objectMapper.createArrayNode();
+        for (Map.Entry<String, ObjectNode> feature : features.entrySet()) {
+            List<List<JsonNode>> featureScenarios = scenarios.get(feature.getKey());
+            featureScenarios.sort(Comparator.comparingInt(elements -> elements.get(elements.size() - 1).path("line").asInt()));
+            ArrayNode elements = feature.getValue().putArray("elements");
+            featureScenarios.forEach(elements::addAll);
+            result.add(feature.getValue());
+        }
+        if (merged.getParent() != null) {
+            Files.createDirectories(merged.getParent());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(merged.toFile(), result);
+    }
+}
@@ -0,0 +1,48 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportMergerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void featuresAreSortedByUri() throws Exception {
+        Path first = report("[" + feature("b.feature", 7) + "," + feature("a.feature", 3) + "]");
+        Path second = report("[" + feature("c.feature", 5) + "," + feature("a.feature", 1) + "]");
+        Path merged = temporaryFolder.getRoot().toPath().resolve("cucumber.json");
+
+        new ReportMerger().merge(Arrays.asList(first, second), merged);
+
+        JsonNode report = new ObjectMapper().readTree(merged.toFile());
+        assertEquals(3, report.size());
+        assertEquals("a.feature", report.get(0).get("uri").asText());
+        assertEquals("b.feature", report.get(1).get("uri").asText());
+        assertEquals("c.feature", report.get(2).get("uri").asText());
+        // scenarios of a feature run by different forks are in the order of the feature file
+        assertEquals(1, report.get(0).get("elements").get(0).get("line").asInt());
+        assertEquals(3, report.get(0).get("elements").get(1).get("line").asInt());
+    }
+
+    private Path report(String json) throws Exception {
+        Path report = temporaryFolder.newFile().toPath();
+        Files.write(report, json.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+
+    private String feature(String uri, int scenarioLine) {
+        return "{\"uri\":\"" + uri + "\",\"elements\":[{\"type\":\"scenario\",\"line\":" + scenarioLine + "}]}";
+    }
+}
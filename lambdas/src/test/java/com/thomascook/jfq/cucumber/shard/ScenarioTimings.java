@@ -0,0 +1,81 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durations of scenarios from previous runs, kept in a local text file with a line per scenario:
+ * <pre>
+ *   1250 classpath:cucumber/binding/examples.feature:16
+ * </pre>
+ * Scenarios that never ran are expected to take as long as an average known scenario.
+ */
+public class ScenarioTimings {
+
+    // when nothing is known yet all scenarios are equal, the value itself doesn't matter
+    private static final long DEFAULT_ESTIMATE = 1000;
+
+    private final Path file;
+    private final Map<String, Long> durations = new TreeMap<>();
+    private final long unknownEstimate;
+
+    private ScenarioTimings(Path file, Map<String, Long> durations) {
+        this.file = file;
+        this.durations.putAll(durations);
+        this.unknownEstimate = durations.isEmpty() ? DEFAULT_ESTIMATE
+                : durations.values().stream().mapToLong(Long::longValue).sum() / durations.size();
+    }
+
+    public static ScenarioTimings load(Path file) throws IOException {
+        Validate.notNull(file);
+        Map<String, Long> durations = new TreeMap<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    try {
+                        durations.put(line.substring(space + 1), Long.parseLong(line.substring(0, space)));
+                    } catch (NumberFormatException e) {
+                        // a broken line only costs a worse estimate
+                    }
+                }
+            }
+        }
+        return new ScenarioTimings(file, durations);
+    }
+
+    /**
+     * @return expected duration of the scenario in ms
+     */
+    public synchronized long estimate(String scenario) {
+        Long duration = durations.get(scenario);
+        return duration == null ? unknownEstimate : duration;
+    }
+
+    public synchronized boolean isKnown(String scenario) {
+        return durations.containsKey(scenario);
+    }
+
+    public synchronized void record(String scenario, long millis) {
+        durations.put(scenario, millis);
+    }
+
+    public synchronized void save() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> duration : durations.entrySet()) {
+                writer.write(duration.getValue() + " " + duration.getKey());
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which fork runs which scenario.
+ * <p>
+ * Initial shares are built from historical durations: the longest scenarios go first, each one to the fork with the
+ * least work so far. Every fork runs its share longest first. A fork that is done with its share steals from the end
+ * of the share with the most work left, so unlucky estimates don't leave forks idle while others are still busy.
+ */
+class ShardScheduler {
+
+    private final ScenarioTimings timings;
+    private final List<Deque<String>> shares = new ArrayList<>();
+    private final long[] planned;
+    private final long[] remaining;
+    private final int[] stolen;
+
+    ShardScheduler(Collection<String> scenarios, ScenarioTimings timings, int forks) {
+        Validate.notNull(scenarios);
+        Validate.notNull(timings);
+        Validate.isTrue(forks > 0);
+        this.timings = timings;
+        this.planned = new long[forks];
+        this.remaining = new long[forks];
+        this.stolen = new int[forks];
+
+        List<String> longestFirst = new ArrayList<>(scenarios);
+        longestFirst.sort((left, right) -> {
+            int byDuration = Long.compare(timings.estimate(right), timings.estimate(left));
+            return byDuration != 0 ? byDuration : left.compareTo(right);
+        });
+
+        PriorityQueue<Integer> leastLoaded = new PriorityQueue<>(forks, (left, right) -> {
+            int byLoad = Long.compare(planned[left], planned[right]);
+            return byLoad != 0 ? byLoad : Integer.compare(left, right);
+        });
+        for (int fork = 0; fork < forks; fork++) {
+            shares.add(new ArrayDeque<>());
+            leastLoaded.add(fork);
+        }
+        for (String scenario : longestFirst) {
+            int fork = leastLoaded.poll();
+            shares.get(fork).addLast(scenario);
+            planned[fork] += timings.estimate(scenario);
+            leastLoaded.add(fork);
+        }
+        System.arraycopy(planned, 0, remaining, 0, forks);
+    }
+
+    /**
+     * @return next scenario for the fork or null when there is nothing left to run or to steal
+     */
+    synchronized String next(int fork) {
+        String scenario = shares.get(fork).pollFirst();
+        if (scenario != null) {
+            remaining[fork] -= timings.estimate(scenario);
+            return scenario;
+        }
+
+        int victim = -1;
+        for (int other = 0; other < shares.size(); other++) {
+            if (!shares.get(other).isEmpty() && (victim < 0 || remaining[other] > remaining[victim])) {
+                victim = other;
+            }
+        }
+        if (victim < 0) {
+            return null;
+        }
+        scenario = shares.get(victim).pollLast();
+        remaining[victim] -= timings.estimate(scenario);
+        stolen[fork]++;
+        return scenario;
+    }
+
+    /**
+     * @return estimated duration of the initial share of the fork in ms
+     */
+    synchronized long planned(int fork) {
+        return planned[fork];
+    }
+
+    synchronized int stolen(int fork) {
+        return stolen[fork];
+    }
+
+    synchronized List<String> share(int fork) {
+        return new ArrayList<>(shares.get(fork));
+    }
+}
@@ -0,0 +1,97 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardSchedulerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void longestFirstToLeastLoaded() throws Exception {
+        ScenarioTimings timings = timings("800 a", "500 b", "400 c", "300 d", "100 e");
+
+        ShardScheduler scheduler = new ShardScheduler(Arrays.asList("a", "b", "c", "d", "e"), timings, 2);
+
+        assertEquals(Arrays.asList("a", "d"), scheduler.share(0));
+        assertEquals(Arrays.asList("b", "c", "e"), scheduler.share(1));
+        assertEquals(1100, scheduler.planned(0));
+        assertEquals(1000, scheduler.planned(1));
+    }
+
+    @Test
+    public void unknownScenariosTakeAverageTime() throws Exception {
+        ScenarioTimings timings = timings("300 a", "100 b");
+
+        assertEquals(300, timings.estimate("a"));
+        assertEquals(200, timings.estimate("new one"));
+    }
+
+    @Test
+    public void idleForkStealsFromBusiest() throws Exception {
+        ScenarioTimings timings = timings("800 a", "500 b", "400 c", "300 d", "100 e");
+        ShardScheduler scheduler = new ShardScheduler(Arrays.asList("a", "b", "c", "d", "e"), timings, 2);
+
+        assertEquals("a", scheduler.next(0));
+        assertEquals("d", scheduler.next(0));
+        assertEquals("b", scheduler.next(1));
+        // fork 0 is done with its share, the shortest of fork 1 is taken from the end
+        assertEquals("e", scheduler.next(0));
+        assertEquals(1, scheduler.stolen(0));
+        assertEquals("c", scheduler.next(1));
+        assertNull(scheduler.next(0));
+        assertNull(scheduler.next(1));
+    }
+
+    @Test
+    public void everyScenarioRunsOnce() throws Exception {
+        List<String> scenarios = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            scenarios.add("scenario " + i);
+        }
+        ShardScheduler scheduler = new ShardScheduler(scenarios, timings(), 3);
+
+        List<String> run = new ArrayList<>();
+        String scenario;
+        // fork 2 never asks, as if it hung
+        while ((scenario = scheduler.next(run.size() % 2)) != null) {
+            run.add(scenario);
+        }
+
+        Collections.sort(run);
+        List<String> expected = new ArrayList<>(scenarios);
+        Collections.sort(expected);
+        assertEquals(expected, run);
+        assertTrue(scheduler.share(2).isEmpty());
+    }
+
+    @Test
+    public void durationsSurviveSaving() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("timings.txt");
+        ScenarioTimings timings = ScenarioTimings.load(file);
+        timings.record("classpath:cucumber/binding/examples.feature:16", 1250);
+        timings.save();
+
+        assertEquals(1250, ScenarioTimings.load(file).estimate("classpath:cucumber/binding/examples.feature:16"));
+    }
+
+    private ScenarioTimings timings(String... lines) throws Exception {
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return ScenarioTimings.load(file);
+    }
+}
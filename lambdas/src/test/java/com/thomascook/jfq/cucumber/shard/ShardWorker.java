@@ -0,0 +1,83 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main class of a JVM forked by {@link ShardedLauncher}. Takes usual Cucumber options (glue, plugins etc.) as
+ * arguments, but no features: it runs scenarios the launcher sends to its stdin one by one with the same Cucumber
+ * runtime, so glue is scanned and Spring context is created once per fork.
+ * <p>
+ * Replies go to stdout along with everything else printed there, they are told apart by {@link #MARKER}. {@link #STOP}
+ * or the end of stdin finishes the reports and exits.
+ */
+public class ShardWorker {
+
+    static final String MARKER = "@@shard ";
+    static final String RUN = "RUN ";
+    static final String STOP = "STOP";
+    static final String READY = "READY";
+    static final String PASSED = "PASSED ";
+    static final String FAILED = "FAILED ";
+
+    public static void main(String[] args) throws IOException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        RuntimeOptions options = new RuntimeOptions(new ArrayList<>(Arrays.asList(args)));
+        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+        Runtime runtime = new Runtime(resourceLoader, classFinder, classLoader, options);
+        Formatter formatter = options.formatter(classLoader);
+        Reporter reporter = options.reporter(classLoader);
+
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        reply(READY);
+        String command;
+        while ((command = commands.readLine()) != null && command.startsWith(RUN)) {
+            String scenario = command.substring(RUN.length());
+            int errors = runtime.getErrors().size();
+            long start = System.nanoTime();
+            boolean passed;
+            try {
+                for (CucumberFeature feature : CucumberFeature.load(resourceLoader,
+                        Collections.singletonList(scenario), Collections.emptyList())) {
+                    feature.run(formatter, reporter, runtime);
+                }
+                passed = runtime.getErrors().size() == errors;
+            } catch (RuntimeException e) {
+                // e.g. the feature file is gone, the rest of the share can still run
+                e.printStackTrace();
+                passed = false;
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            reply((passed ? PASSED : FAILED) + millis + " " + scenario);
+        }
+
+        formatter.done();
+        formatter.close();
+        runtime.printSummary();
+        System.exit(runtime.exitStatus());
+    }
+
+    private static void reply(String reply) {
+        // a line of its own, formatters may leave the current line unfinished
+        System.out.println();
+        System.out.println(MARKER + reply);
+        System.out.flush();
+    }
+}
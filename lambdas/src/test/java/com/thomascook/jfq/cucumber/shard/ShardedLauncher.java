@@ -0,0 +1,427 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.model.ExamplesTableRow;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs scenarios in several forked JVMs, so that a suite isn't limited by what a single JVM can do in parallel.
+ * <pre>
+ *   ShardedLauncher [--forks N] [--timings FILE] [--report DIR] [--jvm-arg ARG]... [--scenario-timeout SECONDS]
+ *                   [--fork-timeout SECONDS] [Cucumber options] [features]
+ * </pre>
+ * Every scenario (every example row for outlines) is a unit of work. The launcher finds them with the usual Cucumber
+ * options, splits them between forks by durations from the timings file (see {@link ShardScheduler}) and feeds them to
+ * {@link ShardWorker}s one at a time, letting idle forks steal work from busy ones. Measured durations go back to the
+ * timings file, JSON reports of the forks are merged into {@code cucumber.json} in the report directory.
+ * <p>
+ * A fork that doesn't answer within the scenario timeout (10 minutes by default) or runs longer than the fork timeout
+ * (2 hours) is killed: its current scenario fails, the rest of its share is stolen by the others. If the launcher
+ * itself fails, all the forks are killed too.
+ * <p>
+ * Tag and name filters are applied by the launcher only, line filters and tag filters can't be mixed in a fork.
+ * Plugins writing to files are not passed to forks since every fork would overwrite the same file.
+ */
+public class ShardedLauncher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedLauncher.class);
+
+    private static final Set<String> OPTIONS_WITH_VALUE = new LinkedHashSet<>(Arrays.asList("-g", "--glue",
+            "-p", "--plugin", "-f", "--format", "-t", "--tags", "-n", "--name", "--snippets", "--i18n", "--dotcucumber"));
+    private static final Set<String> LAUNCHER_ONLY = new LinkedHashSet<>(Arrays.asList("-t", "--tags", "-n", "--name"));
+    private static final Set<String> PLUGINS = new LinkedHashSet<>(Arrays.asList("-p", "--plugin", "-f", "--format"));
+
+    private final int forks;
+    private final Path timingsFile;
+    private final Path reportDir;
+    private final List<String> jvmArgs;
+    private final List<String> cucumberArgs;
+
+    private long scenarioTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+    private long forkTimeoutMillis = TimeUnit.HOURS.toMillis(2);
+
+    public ShardedLauncher(int forks, Path timingsFile, Path reportDir, List<String> jvmArgs, List<String> cucumberArgs) {
+        Validate.isTrue(forks > 0);
+        Validate.notNull(timingsFile);
+        Validate.notNull(reportDir);
+        Validate.noNullElements(jvmArgs);
+        Validate.noNullElements(cucumberArgs);
+        this.forks = forks;
+        this.timingsFile = timingsFile;
+        this.reportDir = reportDir;
+        this.jvmArgs = new ArrayList<>(jvmArgs);
+        this.cucumberArgs = new ArrayList<>(cucumberArgs);
+    }
+
+    /**
+     * Time (in milliseconds) a fork is given to start and to run a single scenario
+     */
+    public void setScenarioTimeout(long scenarioTimeout) {
+        Validate.isTrue(scenarioTimeout > 0);
+        this.scenarioTimeoutMillis = scenarioTimeout;
+    }
+
+    /**
+     * Time (in milliseconds) a fork is given to run its whole share including stolen scenarios
+     */
+    public void setForkTimeout(long forkTimeout) {
+        Validate.isTrue(forkTimeout > 0);
+        this.forkTimeoutMillis = forkTimeout;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int forks = java.lang.Runtime.getRuntime().availableProcessors();
+        Path timingsFile = Paths.get("cucumber-timings.txt");
+        Path reportDir = Paths.get("target", "cucumber-shards");
+        List<String> jvmArgs = new ArrayList<>();
+        List<String> cucumberArgs = new ArrayList<>();
+        Long scenarioTimeout = null;
+        Long forkTimeout = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--forks":
+                    forks = Integer.parseInt(args[++i]);
+                    break;
+                case "--timings":
+                    timingsFile = Paths.get(args[++i]);
+                    break;
+                case "--report":
+                    reportDir = Paths.get(args[++i]);
+                    break;
+                case "--jvm-arg":
+                    jvmArgs.add(args[++i]);
+                    break;
+                case "--scenario-timeout":
+                    scenarioTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                    break;
+                case "--fork-timeout":
+                    forkTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                    break;
+                default:
+                    cucumberArgs.add(args[i]);
+            }
+        }
+        ShardedLauncher launcher = new ShardedLauncher(forks, timingsFile, reportDir, jvmArgs, cucumberArgs);
+        if (scenarioTimeout != null) {
+            launcher.setScenarioTimeout(scenarioTimeout);
+        }
+        if (forkTimeout != null) {
+            launcher.setForkTimeout(forkTimeout);
+        }
+        System.exit(launcher.run());
+    }
+
+    /**
+     * @return 0 if all scenarios passed, 1 otherwise, same as Cucumber's exit status
+     */
+    public int run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<String> scenarios = findScenarios();
+        ScenarioTimings timings = ScenarioTimings.load(timingsFile);
+        int forkCount = Math.max(1, Math.min(forks, scenarios.size()));
+        ShardScheduler scheduler = new ShardScheduler(scenarios, timings, forkCount);
+        LOG.info("{} scenarios in {} forks, {} of them have known durations", scenarios.size(), forkCount,
+                scenarios.stream().filter(timings::isKnown).count());
+
+        List<String> workerArgs = workerArgs();
+        ExecutorService executor = Executors.newFixedThreadPool(forkCount);
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        List<Fork> started = new ArrayList<>();
+        List<Future<Fork>> results = new ArrayList<>();
+        boolean passed = true;
+        long work = 0;
+        List<Path> reports = new ArrayList<>();
+        boolean completed = false;
+        try {
+            for (int i = 0; i < forkCount; i++) {
+                Fork fork = new Fork(i, scheduler, timings, workerArgs, watchdog);
+                started.add(fork);
+                results.add(executor.submit(fork));
+            }
+            executor.shutdown();
+
+            for (Future<Fork> result : results) {
+                Fork fork = finished(result);
+                passed &= fork.failed.isEmpty() && fork.exitStatus == 0;
+                work += fork.busyMillis;
+                reports.add(fork.report);
+                LOG.info("fork-{}: planned {} ms, ran {} scenarios ({} stolen) in {} ms, exit status {}", fork.index,
+                        scheduler.planned(fork.index), fork.scenarios, scheduler.stolen(fork.index), fork.busyMillis,
+                        fork.exitStatus);
+                fork.failed.forEach(scenario -> LOG.warn("fork-{}: FAILED {}", fork.index, scenario));
+            }
+            completed = true;
+        } finally {
+            watchdog.shutdownNow();
+            if (!completed) {
+                // nobody is going to talk to the forks anymore
+                started.forEach(Fork::kill);
+                executor.shutdownNow();
+            }
+        }
+        for (int i = 0; i < forkCount; i++) {
+            // left by a fork that died after all the others were done
+            for (String scenario : scheduler.share(i)) {
+                LOG.warn("fork-{}: NOT RUN {}", i, scenario);
+                passed = false;
+            }
+        }
+        timings.save();
+        new ReportMerger().merge(reports, reportDir.resolve("cucumber.json"));
+
+        long wall = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Suite took {} ms, total work is {} ms, total work / {} forks is {} ms", wall, work, forkCount,
+                work / forkCount);
+        return passed ? 0 : 1;
+    }
+
+    private static Fork finished(Future<Fork> fork) throws InterruptedException {
+        try {
+            return fork.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fork failed to start", e.getCause());
+        }
+    }
+
+    /**
+     * @return feature path with line of every scenario and example row that passes the filters
+     */
+    List<String> findScenarios() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        RuntimeOptions options = new RuntimeOptions(new ArrayList<>(cucumberArgs));
+        Set<String> scenarios = new LinkedHashSet<>();
+        for (String featurePath : options.getFeaturePaths()) {
+            List<CucumberFeature> features = CucumberFeature.load(resourceLoader,
+                    Collections.singletonList(featurePath), options.getFilters());
+            for (CucumberFeature feature : features) {
+                String path = locate(featurePath, feature.getPath());
+                for (CucumberTagStatement element : feature.getFeatureElements()) {
+                    if (element instanceof CucumberScenarioOutline) {
+                        for (CucumberExamples examples : ((CucumberScenarioOutline) element).getCucumberExamplesList()) {
+                            List<ExamplesTableRow> rows = examples.getExamples().getRows();
+                            // the first row is the header
+                            for (ExamplesTableRow row : rows.subList(1, rows.size())) {
+                                scenarios.add(path + ":" + row.getLine());
+                            }
+                        }
+                    } else {
+                        scenarios.add(path + ":" + element.getGherkinModel().getLine());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(scenarios);
+    }
+
+    // feature paths are relative to the directory or classpath root they were found in
+    private static String locate(String featurePath, String path) {
+        String root = featurePath.replaceAll("(:\\d+)+$", "");
+        if (root.startsWith(MultiLoader.CLASSPATH_SCHEME)) {
+            return MultiLoader.CLASSPATH_SCHEME + path;
+        }
+        File rootFile = new File(root);
+        return rootFile.isDirectory() && !new File(path).exists() ? new File(rootFile, path).getPath() : path;
+    }
+
+    private List<String> workerArgs() {
+        List<String> args = new ArrayList<>();
+        for (int i = 0; i < cucumberArgs.size(); i++) {
+            String arg = cucumberArgs.get(i);
+            if (!OPTIONS_WITH_VALUE.contains(arg)) {
+                // features are sent to workers one by one
+                if (arg.startsWith("-")) {
+                    args.add(arg);
+                }
+                continue;
+            }
+            String value = cucumberArgs.get(++i);
+            if (LAUNCHER_ONLY.contains(arg)) {
+                continue;
+            }
+            if (PLUGINS.contains(arg) && value.contains(":")) {
+                LOG.warn("Plugin {} is not passed to forks, use the merged report instead", value);
+                continue;
+            }
+            args.add(arg);
+            args.add(value);
+        }
+        return args;
+    }
+
+    private class Fork implements Callable<Fork> {
+
+        private final int index;
+        private final ShardScheduler scheduler;
+        private final ScenarioTimings timings;
+        private final ScheduledExecutorService watchdog;
+        private final List<String> command = new ArrayList<>();
+        private final Path report;
+
+        private final List<String> failed = new ArrayList<>();
+        private int scenarios;
+        private long busyMillis;
+        private int exitStatus;
+
+        private Process process;
+        private boolean killed;
+        private volatile String killedFor;
+
+        Fork(int index, ShardScheduler scheduler, ScenarioTimings timings, List<String> workerArgs,
+             ScheduledExecutorService watchdog) {
+            this.index = index;
+            this.scheduler = scheduler;
+            this.timings = timings;
+            this.watchdog = watchdog;
+            this.report = reportDir.resolve("fork-" + index + ".json").toAbsolutePath();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmArgs);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+            command.addAll(workerArgs);
+            command.add("--plugin");
+            command.add("json:" + report);
+        }
+
+        @Override
+        public Fork call() throws IOException, InterruptedException {
+            if (!start()) {
+                return this;
+            }
+            ScheduledFuture<?> forkAlarm = watchdog.schedule(() -> kill("fork timeout of " + forkTimeoutMillis + " ms"),
+                    forkTimeoutMillis, TimeUnit.MILLISECONDS);
+            // waiting for READY is covered too, glue scanning and Spring context shouldn't take longer than a scenario
+            ScheduledFuture<?> scenarioAlarm = scenarioAlarm();
+            String scenario = null;
+            try (BufferedReader replies = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8));
+                 Writer commands = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+
+                String line;
+                while ((line = replies.readLine()) != null) {
+                    int marker = line.indexOf(ShardWorker.MARKER);
+                    if (marker < 0) {
+                        // blank lines come mostly from replies
+                        if (!line.isEmpty()) {
+                            System.out.println("[fork-" + index + "] " + line);
+                        }
+                        continue;
+                    }
+                    if (marker > 0) {
+                        System.out.println("[fork-" + index + "] " + line.substring(0, marker));
+                    }
+                    scenarioAlarm.cancel(false);
+                    String reply = line.substring(marker + ShardWorker.MARKER.length());
+                    if (reply.startsWith(ShardWorker.PASSED) || reply.startsWith(ShardWorker.FAILED)) {
+                        finished(reply);
+                    }
+                    scenario = scheduler.next(index);
+                    // the summary and exit are covered by the same timeout
+                    scenarioAlarm = scenarioAlarm();
+                    commands.write(scenario == null ? ShardWorker.STOP + "\n" : ShardWorker.RUN + scenario + "\n");
+                    commands.flush();
+                    if (scenario == null) {
+                        break;
+                    }
+                }
+                // the rest is the summary
+                while ((line = replies.readLine()) != null) {
+                    System.out.println("[fork-" + index + "] " + line);
+                }
+            } catch (IOException e) {
+                // streams of the killed process are closed under the reader
+                if (killedFor == null) {
+                    throw e;
+                }
+            } finally {
+                scenarioAlarm.cancel(false);
+                forkAlarm.cancel(false);
+            }
+            try {
+                exitStatus = process.waitFor();
+            } finally {
+                process.destroy();
+            }
+            if (scenario != null) {
+                // its share will be stolen by others
+                failed.add(scenario + (killedFor == null ? " (fork died)" : " (killed after " + killedFor + ")"));
+                exitStatus = exitStatus == 0 ? 1 : exitStatus;
+            }
+            return this;
+        }
+
+        /**
+         * @return false if the fork has been killed before it started
+         */
+        private synchronized boolean start() throws IOException {
+            if (killed) {
+                return false;
+            }
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            return true;
+        }
+
+        private ScheduledFuture<?> scenarioAlarm() {
+            return watchdog.schedule(() -> kill("scenario timeout of " + scenarioTimeoutMillis + " ms"),
+                    scenarioTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void kill(String reason) {
+            LOG.warn("fork-{}: killing after {}", index, reason);
+            killedFor = reason;
+            kill();
+        }
+
+        synchronized void kill() {
+            killed = true;
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+
+        private void finished(String reply) {
+            // PASSED|FAILED <millis> <scenario>
+            String[] parts = reply.split(" ", 3);
+            long millis = Long.parseLong(parts[1]);
+            timings.record(parts[2], millis);
+            busyMillis += millis;
+            scenarios++;
+            if (reply.startsWith(ShardWorker.FAILED)) {
+                failed.add(parts[2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.thomascook.jfq.cucumber.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedLauncherTest {
+
+    private static final List<String> BINDING_EXAMPLES = Arrays.asList(
+            "--glue", "com.thomascook.jfq.cucumber.binding", "classpath:cucumber/binding");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void scenariosAndExampleRowsAreUnitsOfWork() {
+        List<String> scenarios = launcher(2, BINDING_EXAMPLES).findScenarios();
+
+        // two scenarios and two example rows of the outline
+        assertEquals(4, scenarios.size());
+        assertTrue(scenarios.toString(), scenarios.get(0).startsWith("classpath:cucumber/binding/examples.feature:"));
+    }
+
+    @Test
+    public void tagsAreAppliedByLauncher() {
+        List<String> scenarios = launcher(2, Arrays.asList("--tags", "@HooksExamples",
+                "--glue", "com.thomascook.jfq.cucumber.binding", "classpath:cucumber/binding")).findScenarios();
+
+        assertEquals(1, scenarios.size());
+    }
+
+    @Test
+    public void runInForksAndMergeReports() throws Exception {
+        ShardedLauncher launcher = launcher(2, BINDING_EXAMPLES);
+
+        assertEquals(0, launcher.run());
+
+        JsonNode report = new ObjectMapper().readTree(temporaryFolder.getRoot().toPath()
+                .resolve("report").resolve("cucumber.json").toFile());
+        assertEquals(1, report.size());
+        int scenarios = 0;
+        int previousLine = 0;
+        for (JsonNode element : report.get(0).get("elements")) {
+            if (!"background".equals(element.get("type").asText())) {
+                scenarios++;
+                assertTrue("Scenarios are in the order of the feature file", element.get("line").asInt() > previousLine);
+                previousLine = element.get("line").asInt();
+            }
+        }
+        assertEquals(4, scenarios);
+
+        // durations are known for the next run
+        ScenarioTimings timings = ScenarioTimings.load(timingsFile());
+        launcher.findScenarios().forEach(scenario -> assertTrue(scenario, timings.isKnown(scenario)));
+    }
+
+    @Test
+    public void forkThatDoesNotAnswerIsKilled() throws Exception {
+        ShardedLauncher launcher = launcher(2, BINDING_EXAMPLES);
+        // not enough even to start
+        launcher.setScenarioTimeout(1);
+
+        long start = System.nanoTime();
+        assertEquals(1, launcher.run());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+    }
+
+    private ShardedLauncher launcher(int forks, List<String> cucumberArgs) {
+        return new ShardedLauncher(forks, timingsFile(), temporaryFolder.getRoot().toPath().resolve("report"),
+                Collections.singletonList("-Xmx256m"), cucumberArgs);
+    }
+
+    private Path timingsFile() {
+        return temporaryFolder.getRoot().toPath().resolve("timings.txt");
+    }
+}
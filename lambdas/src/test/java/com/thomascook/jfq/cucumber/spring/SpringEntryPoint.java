@@ -7,7 +7,8 @@ import org.junit.runner.RunWith;
 @RunWith(Cucumber.class)
 @CucumberOptions(
         features = "classpath:cucumber/spring",
-        glue = "com.thomascook.jfq.cucumber.spring"
+        glue = {"com.thomascook.jfq.cucumber.spring", "com.thomascook.jfq.cucumber.budget"},
+        plugin = "com.thomascook.jfq.cucumber.budget.StepAllocationPlugin"
 )
 public class SpringEntryPoint {
 }
@@ -0,0 +1,17 @@
+package com.thomascook.jfq.http;
+
+import org.springframework.http.client.ClientHttpRequest;
+
+/**
+ * Request which can be aborted from another thread while {@link #execute()} is blocked on the network. Interrupting
+ * that thread is not enough: neither HttpURLConnection nor OkHttp react to interrupts during socket IO.
+ */
+public interface AbortableClientHttpRequest extends ClientHttpRequest {
+
+    /**
+     * Makes pending {@link #execute()} fail with an IOException as soon as possible and releases the connection, the
+     * one called later fails right away. Meant for requests nobody waits for anymore, the response body may become
+     * unreadable too.
+     */
+    void abort();
+}
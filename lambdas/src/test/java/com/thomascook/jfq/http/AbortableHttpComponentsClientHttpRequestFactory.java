@@ -0,0 +1,87 @@
+package com.thomascook.jfq.http;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * {@link HttpComponentsClientHttpRequestFactory} which creates {@link AbortableClientHttpRequest}s. Aborting calls
+ * {@link HttpUriRequest#abort()}, which shuts down the connection the request is blocked on, the same thing HttpClient
+ * does when a request is cancelled.
+ */
+public class AbortableHttpComponentsClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    // Spring's request doesn't expose the HttpClient one, it is caught on the way in createRequest
+    private final ThreadLocal<HttpUriRequest> created = new ThreadLocal<>();
+
+    public AbortableHttpComponentsClientHttpRequestFactory() {
+    }
+
+    public AbortableHttpComponentsClientHttpRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        try {
+            ClientHttpRequest request = super.createRequest(uri, httpMethod);
+            return new AbortableRequest(request, created.get());
+        } finally {
+            created.remove();
+        }
+    }
+
+    @Override
+    protected void postProcessHttpRequest(HttpUriRequest request) {
+        created.set(request);
+    }
+
+    private static class AbortableRequest implements AbortableClientHttpRequest {
+
+        private final ClientHttpRequest request;
+        private final HttpUriRequest httpRequest;
+
+        AbortableRequest(ClientHttpRequest request, HttpUriRequest httpRequest) {
+            this.request = request;
+            this.httpRequest = httpRequest;
+        }
+
+        @Override
+        public void abort() {
+            httpRequest.abort();
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            return request.execute();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return request.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.thomascook.jfq.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.matching.EqualToJsonPattern;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.jsonResponse;
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.like;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compression of the same payloads that {@link RestTemplateExamples} sends, just bigger. WireMock (at least the version
+ * we use) doesn't compress responses, so gzipped response bodies are prepared by hand.
+ */
+public class CompressionExamples {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionExamples.class);
+
+    private static final int THRESHOLD = 1024;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    private ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED);
+
+    private GzipEncoder encoder = new GzipEncoder();
+
+    private URI uri() {
+        return UriComponentsBuilder.newInstance().scheme("http").host("localhost").path("/").port(wireMockRule.port()).build().toUri();
+    }
+
+    private RestTemplate buildCompressingRestTemplate() {
+        // the body is buffered by the interceptor anyway, with buffering factory we also get Content-Length
+        RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        restTemplate.setMessageConverters(Collections.singletonList(new MappingJackson2HttpMessageConverter(objectMapper)));
+        restTemplate.setInterceptors(Collections.singletonList(new GzipClientHttpRequestInterceptor(THRESHOLD, encoder)));
+        return restTemplate;
+    }
+
+    /**
+     * Payload similar to the one from {@link RestTemplateExamples} but with as many values as needed
+     */
+    private Map<String, String[]> payload(int values) {
+        String[] words = new String[values];
+        for (int i = 0; i < values; i++) {
+            words[i] = "value" + i;
+        }
+        Map<String, String[]> payload = new HashMap<>();
+        payload.put("field1", words);
+        return payload;
+    }
+
+    private void stubGzippedResponse() throws IOException {
+        byte[] response = objectMapper.writeValueAsBytes(new RequestBean("some text", 234));
+        wireMockRule.stubFor(
+                post(urlPathMatching("/"))
+                        .withHeader("Content-Encoding", equalTo("gzip"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withHeader("Content-Encoding", "gzip")
+                                .withBody(encoder.encode(response))));
+    }
+
+    @Test
+    public void restTemplateCompressesBigBodies() throws Exception {
+        stubGzippedResponse();
+        Map<String, String[]> payload = payload(1000);
+
+        ResponseBean response = buildCompressingRestTemplate().postForObject(uri(), payload, ResponseBean.class);
+
+        LOG.info("Decoded response: {}", response);
+        assertEquals(234, response.number);
+        assertReceived(objectMapper.writeValueAsString(payload));
+    }
+
+    /**
+     * Nothing to decode, but the header is there anyway
+     */
+    @Test
+    public void emptyGzippedResponse() {
+        wireMockRule.stubFor(
+                post(urlPathMatching("/"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withHeader("Content-Encoding", "gzip")));
+
+        ResponseBean response = buildCompressingRestTemplate().postForObject(uri(), payload(1), ResponseBean.class);
+
+        assertNull(response);
+    }
+
+    @Test
+    public void restTemplateSendsSmallBodiesAsIs() {
+        wireMockRule.stubFor(
+                post(urlPathMatching("/"))
+                        .withRequestBody(new EqualToJsonPattern("{\"field1\":\"value1\"}", false, false)).willReturn(
+                        like(jsonResponse(new RequestBean("some text", 234)))
+                ));
+        Map<String, String[]> payload = new HashMap<>();
+        payload.put("field1", new String[]{"value1"});
+
+        ResponseBean response = buildCompressingRestTemplate().postForObject(uri(), payload, ResponseBean.class);
+
+        assertEquals(234, response.number);
+        wireMockRule.verify(postRequestedFor(urlPathMatching("/"))
+                .withoutHeader("Content-Encoding")
+                .withHeader("Accept-Encoding", equalTo("gzip")));
+    }
+
+    @Test
+    public void apacheHttpClientCompressesBigBodies() throws Exception {
+        stubGzippedResponse();
+        String requestString = objectMapper.writer().writeValueAsString(payload(1000));
+        HttpPost httpPost = new HttpPost(uri());
+        httpPost.setEntity(new StringEntity(requestString));
+        httpPost.setHeader(new BasicHeader("Content-Type", "application/json"));
+
+        try (CloseableHttpClient client = HttpClients.custom()
+                .addInterceptorFirst(new GzipHttpRequestInterceptor(THRESHOLD, encoder))
+                .build()) {
+
+            try (CloseableHttpResponse response = client.execute(httpPost)) {
+                String responseString = EntityUtils.toString(response.getEntity());
+                LOG.info("HttpClient decoded response body: {}", responseString);
+                assertEquals(234, objectMapper.readValue(responseString, ResponseBean.class).number);
+            }
+        }
+        assertReceived(requestString);
+    }
+
+    /**
+     * WireMock decodes gzipped request bodies itself, so only headers show what was on the wire
+     */
+    private void assertReceived(String expectedJson) {
+        List<LoggedRequest> requests = wireMockRule.findAll(postRequestedFor(urlPathMatching("/")));
+        assertEquals(1, requests.size());
+        LoggedRequest request = requests.get(0);
+        int onTheWire = Integer.parseInt(request.getHeader("Content-Length"));
+        LOG.info("{} bytes of JSON sent as {} bytes", expectedJson.length(), onTheWire);
+
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertTrue(onTheWire < expectedJson.length());
+        assertEquals(expectedJson, request.getBodyAsString());
+    }
+
+    /**
+     * Not a proper benchmark but gives the idea of what compression costs and what it saves.
+     * CPU time is measured for the current thread only, so GC and JIT are not counted.
+     */
+    @Test
+    public void measureBytesOnWireAndCpu() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (int values : new int[]{10, 100, 1000, 10000, 100000}) {
+            byte[] json = objectMapper.writeValueAsBytes(payload(values));
+            int iterations = Math.max(10, 2_000_000 / json.length);
+
+            byte[] compressed = encoder.encode(json);
+            for (int i = 0; i < iterations; i++) {
+                encoder.encode(json);
+            }
+            long start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < iterations; i++) {
+                compressed = encoder.encode(json);
+            }
+            long encodeNanos = (threads.getCurrentThreadCpuTime() - start) / iterations;
+
+            byte[] buffer = new byte[8192];
+            start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < iterations; i++) {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), buffer.length)) {
+                    while (in.read(buffer) >= 0) {
+                        // just decoding
+                    }
+                }
+            }
+            long decodeNanos = (threads.getCurrentThreadCpuTime() - start) / iterations;
+
+            LOG.info("{} bytes -> {} bytes on the wire ({}%), encode {} us, decode {} us, {} MB/s encoding",
+                    json.length, compressed.length, 100 * compressed.length / json.length,
+                    encodeNanos / 1000, decodeNanos / 1000,
+                    encodeNanos == 0 ? "n/a" : json.length * 1000 / encodeNanos);
+        }
+    }
+}
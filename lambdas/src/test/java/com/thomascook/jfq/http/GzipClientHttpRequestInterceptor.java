@@ -0,0 +1,151 @@
+package com.thomascook.jfq.http;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * RestTemplate interceptor that gzips request bodies bigger than the threshold, asks the server for gzipped responses
+ * and decodes them on the fly while the body is being read (nothing is buffered).
+ * <p>
+ * Small bodies are sent as is: gzip adds about 20 bytes of its own, and below a kilobyte or so the CPU spent doesn't
+ * pay off since the body fits into a single TCP packet anyway.
+ * <pre>
+ * restTemplate.setInterceptors(Collections.singletonList(new GzipClientHttpRequestInterceptor(1024)));
+ * </pre>
+ */
+public class GzipClientHttpRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    static final String GZIP = "gzip";
+
+    private final int threshold;
+    private final GzipEncoder encoder;
+
+    public GzipClientHttpRequestInterceptor(int threshold) {
+        this(threshold, new GzipEncoder());
+    }
+
+    /**
+     * @param threshold minimal size of the request body (in bytes) to be compressed
+     */
+    public GzipClientHttpRequestInterceptor(int threshold, GzipEncoder encoder) {
+        Validate.isTrue(threshold >= 0);
+        Validate.notNull(encoder);
+        this.threshold = threshold;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        HttpHeaders headers = request.getHeaders();
+        byte[] content = body;
+        if (body.length >= threshold && body.length > 0 && !headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            content = encoder.encode(body);
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            if (headers.getContentLength() >= 0) {
+                headers.setContentLength(content.length);
+            }
+        }
+        if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+
+        ClientHttpResponse response = execution.execute(request, content);
+        List<String> encoding = response.getHeaders().get(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && encoding.size() == 1 && GZIP.equalsIgnoreCase(encoding.get(0).trim())
+                && hasBody(request, response)) {
+            return new GzipClientHttpResponse(response);
+        }
+        return response;
+    }
+
+    private boolean hasBody(HttpRequest request, ClientHttpResponse response) throws IOException {
+        int status = response.getRawStatusCode();
+        return request.getMethod() != HttpMethod.HEAD
+                && status != HttpStatus.NO_CONTENT.value()
+                && status != HttpStatus.NOT_MODIFIED.value();
+    }
+
+    /**
+     * Decoded view of the response. Content-Encoding and Content-Length are removed since they describe the bytes
+     * on the wire, not what the caller reads.
+     */
+    private static class GzipClientHttpResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private HttpHeaders headers;
+        private InputStream body;
+
+        GzipClientHttpResponse(ClientHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                HttpHeaders decoded = new HttpHeaders();
+                decoded.putAll(response.getHeaders());
+                decoded.remove(HttpHeaders.CONTENT_ENCODING);
+                decoded.remove(HttpHeaders.CONTENT_LENGTH);
+                headers = decoded;
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                // servers do send 'Content-Encoding: gzip' with an empty body, GZIPInputStream fails with EOFException
+                // reading the header of nothing
+                PushbackInputStream raw = new PushbackInputStream(response.getBody(), 1);
+                int first = raw.read();
+                if (first < 0) {
+                    body = raw;
+                } else {
+                    raw.unread(first);
+                    body = new GZIPInputStream(raw, 8192);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (body != null) {
+                try {
+                    // releases the Inflater right away instead of waiting for finalization
+                    body.close();
+                } catch (IOException ignored) {
+                    // the response is being closed anyway
+                }
+            }
+            response.close();
+        }
+    }
+}
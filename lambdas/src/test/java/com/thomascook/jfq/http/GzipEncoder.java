@@ -0,0 +1,113 @@
+package com.thomascook.jfq.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip encoder that keeps a pool of {@link Deflater}s and output buffers. {@link java.util.zip.GZIPOutputStream}
+ * creates a new Deflater (with a good deal of native memory behind it) and a new buffer for every request body, and
+ * Deflater memory is released only when it is finalized.
+ * <p>
+ * Thread safe. When all pooled encoders are busy a temporary one is created, so callers never wait.
+ */
+public class GzipEncoder {
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, // magic
+            Deflater.DEFLATED, // compression method
+            0, 0, 0, 0, 0,     // flags and modification time
+            0,                 // extra flags
+            (byte) 0xff        // OS unknown
+    };
+    private static final int TRAILER_LENGTH = 8;
+
+    // don't keep huge buffers around because of a single huge body
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final int level;
+    private final BlockingQueue<Encoder> pool;
+
+    public GzipEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param level    compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param poolSize how many idle encoders to keep
+     */
+    public GzipEncoder(int level, int poolSize) {
+        Validate.isTrue(level == Deflater.DEFAULT_COMPRESSION
+                || (level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION), "Wrong compression level");
+        Validate.isTrue(poolSize > 0);
+        this.level = level;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public byte[] encode(byte[] content) {
+        return encode(content, 0, content.length);
+    }
+
+    public byte[] encode(byte[] content, int offset, int length) {
+        Validate.notNull(content);
+        Encoder encoder = pool.poll();
+        if (encoder == null) {
+            encoder = new Encoder(level);
+        }
+        try {
+            return encoder.encode(content, offset, length);
+        } finally {
+            if (!pool.offer(encoder)) {
+                encoder.deflater.end();
+            }
+        }
+    }
+
+    private static class Encoder {
+
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[8192];
+
+        Encoder(int level) {
+            this.deflater = new Deflater(level, true);
+        }
+
+        byte[] encode(byte[] content, int offset, int length) {
+            deflater.reset();
+            crc.reset();
+            deflater.setInput(content, offset, length);
+            deflater.finish();
+            crc.update(content, offset, length);
+
+            System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+            int size = HEADER.length;
+            while (!deflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+
+            byte[] result = Arrays.copyOf(buffer, size + TRAILER_LENGTH);
+            writeIntLE(result, size, (int) crc.getValue());
+            writeIntLE(result, size + 4, length);
+
+            if (buffer.length > MAX_RETAINED_BUFFER) {
+                buffer = new byte[8192];
+            }
+            return result;
+        }
+
+        private static void writeIntLE(byte[] target, int offset, int value) {
+            target[offset] = (byte) value;
+            target[offset + 1] = (byte) (value >> 8);
+            target[offset + 2] = (byte) (value >> 16);
+            target[offset + 3] = (byte) (value >> 24);
+        }
+    }
+}
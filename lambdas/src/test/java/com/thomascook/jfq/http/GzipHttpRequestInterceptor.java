@@ -0,0 +1,69 @@
+package com.thomascook.jfq.http;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+
+/**
+ * Apache HttpClient counterpart of {@link GzipClientHttpRequestInterceptor}. Responses don't need any help here:
+ * client built by {@link org.apache.http.impl.client.HttpClientBuilder} already sends 'Accept-Encoding: gzip,deflate'
+ * and decodes the response entity while it is being read.
+ * <p>
+ * IMPORTANT: the interceptor has to be added with
+ * {@link org.apache.http.impl.client.HttpClientBuilder#addInterceptorFirst(HttpRequestInterceptor)}, otherwise
+ * Content-Length of the original entity is already set by the time the body is compressed.
+ */
+public class GzipHttpRequestInterceptor implements HttpRequestInterceptor {
+
+    private final int threshold;
+    private final GzipEncoder encoder;
+
+    public GzipHttpRequestInterceptor(int threshold) {
+        this(threshold, new GzipEncoder());
+    }
+
+    /**
+     * @param threshold minimal size of the request body (in bytes) to be compressed
+     */
+    public GzipHttpRequestInterceptor(int threshold, GzipEncoder encoder) {
+        Validate.isTrue(threshold >= 0);
+        Validate.notNull(encoder);
+        this.threshold = threshold;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+        if (!(request instanceof HttpEntityEnclosingRequest) || request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        HttpEntityEnclosingRequest enclosingRequest = (HttpEntityEnclosingRequest) request;
+        HttpEntity entity = enclosingRequest.getEntity();
+        if (entity == null || entity.getContentEncoding() != null || !entity.isRepeatable()) {
+            // streaming entities can't be read twice, leave them alone
+            return;
+        }
+        long length = entity.getContentLength();
+        if (length >= 0 && length < threshold) {
+            return;
+        }
+
+        byte[] content = EntityUtils.toByteArray(entity);
+        if (content.length == 0 || content.length < threshold) {
+            return;
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(encoder.encode(content));
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding(GzipClientHttpRequestInterceptor.GZIP);
+        enclosingRequest.setEntity(compressed);
+    }
+}
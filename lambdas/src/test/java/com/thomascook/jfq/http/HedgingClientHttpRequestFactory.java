@@ -0,0 +1,419 @@
+package com.thomascook.jfq.http;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request execution policy for tail latency control. Wraps another {@link ClientHttpRequestFactory} and adds
+ * <ul>
+ * <li>per-call deadline: the caller gets {@link SocketTimeoutException} when it is over, no matter how many attempts
+ * were made or how long connect/read timeouts of the underlying factory are;</li>
+ * <li>hedging: if there is no response after the delay equal to the given percentile of recent latencies, the second
+ * attempt is sent and whichever answers first wins;</li>
+ * <li>retries of failed attempts (IO errors and 5xx responses) while there is time left.</li>
+ * </ul>
+ * Hedges and retries are paid for from the {@link RetryBudget}, so they can't multiply the load on a struggling
+ * upstream. By default only idempotent methods are hedged and retried, because the upstream may well process both
+ * attempts.
+ * <p>
+ * Attempt is considered complete when status line and headers are received. Reading the body is up to the caller and
+ * is not covered by the deadline.
+ * <p>
+ * Attempts run on a bounded pool of threads (see {@link #setMaxConcurrentAttempts(int)}). When an attempt is not needed
+ * anymore (another one won or the deadline is over) it is aborted if the delegate creates {@link
+ * AbortableClientHttpRequest}s: {@link Http2ClientHttpRequestFactory} and {@link
+ * AbortableHttpComponentsClientHttpRequestFactory} do. With any other delegate, plain HttpComponents or
+ * HttpURLConnection based ones included, the loser runs to completion: it keeps its thread and connection until it
+ * gets a response, which is closed right away, or until the read timeout of the delegate. Keep that timeout
+ * reasonable, during an outage calls fail fast once the pool is exhausted.
+ * <p>
+ * Latencies of all attempts count towards the hedging delay: winners, losers and failed ones. An attempt abandoned
+ * before completion counts with the time it had run, so a hanging upstream pushes the delay up rather than hiding.
+ */
+public class HedgingClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingClientHttpRequestFactory.class);
+
+    // power of two, the position in the window is a mask of the counter
+    private static final int LATENCY_WINDOW = 1024;
+    private static final int RECALCULATE_EVERY = 64;
+
+    private final ClientHttpRequestFactory delegate;
+    private final RetryBudget retryBudget;
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 64, 1, TimeUnit.MINUTES,
+            new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "hedged-attempt");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int recorded;
+    private volatile long hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private long deadlineNanos = TimeUnit.SECONDS.toNanos(10);
+    private double hedgePercentile = 0.95;
+    private int maxAttempts = 3;
+    private Set<HttpMethod> retriedMethods = EnumSet.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+
+    public HedgingClientHttpRequestFactory(ClientHttpRequestFactory delegate, RetryBudget retryBudget) {
+        Validate.notNull(delegate);
+        Validate.notNull(retryBudget);
+        this.delegate = delegate;
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Total time (in milliseconds) given to a call including all its attempts.
+     */
+    public void setDeadline(int deadline) {
+        Validate.isTrue(deadline > 0);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadline);
+    }
+
+    /**
+     * Hedging delay (in milliseconds) used until enough latencies are observed to calculate the percentile.
+     */
+    public void setInitialHedgeDelay(int initialHedgeDelay) {
+        Validate.isTrue(initialHedgeDelay >= 0);
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialHedgeDelay);
+    }
+
+    /**
+     * Percentile of recent latencies after which the hedge is sent, e.g. 0.95. Lower values mean faster tail and
+     * more extra load.
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        Validate.isTrue(hedgePercentile > 0 && hedgePercentile < 1, "Percentile should be within (0, 1)");
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Upper limit for original attempt plus hedges and retries.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        Validate.isTrue(maxAttempts > 0);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Upper limit for attempts running at the same time across all calls, 64 by default. A call is rejected with
+     * IOException when there is no thread for its first attempt, hedges and retries are just not sent.
+     */
+    public void setMaxConcurrentAttempts(int maxConcurrentAttempts) {
+        Validate.isTrue(maxConcurrentAttempts > 0);
+        executor.setMaximumPoolSize(maxConcurrentAttempts);
+    }
+
+    /**
+     * Methods allowed to be sent more than once. Non-idempotent ones are excluded by default.
+     */
+    public void setRetriedMethods(HttpMethod... methods) {
+        this.retriedMethods = methods.length == 0 ? EnumSet.noneOf(HttpMethod.class) : EnumSet.copyOf(Arrays.asList(methods));
+    }
+
+    /**
+     * @return current hedging delay in milliseconds
+     */
+    public long getHedgeDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new HedgedRequest(uri, httpMethod);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return number of attempts currently holding a thread, including abandoned ones that have not finished yet
+     */
+    int getAttemptsInFlight() {
+        return executor.getActiveCount();
+    }
+
+    private void recordLatency(long nanos) {
+        long[] window = null;
+        synchronized (latencies) {
+            latencies[recorded & (LATENCY_WINDOW - 1)] = nanos;
+            recorded++;
+            if (recorded % RECALCULATE_EVERY == 0) {
+                // once the window is full the counter only matters modulo the window, so it never overflows
+                window = Arrays.copyOf(latencies, Math.min(recorded, LATENCY_WINDOW));
+                if (recorded == 2 * LATENCY_WINDOW) {
+                    recorded = LATENCY_WINDOW;
+                }
+            }
+        }
+        if (window != null) {
+            Arrays.sort(window);
+            hedgeDelayNanos = window[(int) Math.min(window.length - 1, Math.ceil(hedgePercentile * window.length) - 1)];
+        }
+    }
+
+    private static boolean isFailure(ClientHttpResponse response) throws IOException {
+        return response.getRawStatusCode() >= 500;
+    }
+
+    private class HedgedRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream bufferedOutput = new ByteArrayOutputStream(1024);
+
+        HedgedRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+            return bufferedOutput;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            long deadline = System.nanoTime() + deadlineNanos;
+            byte[] body = bufferedOutput.toByteArray();
+            boolean extraAttemptsAllowed = retriedMethods.contains(method);
+
+            retryBudget.deposit();
+
+            CompletionService<ClientHttpResponse> completion = new ExecutorCompletionService<>(executor);
+            List<Attempt> inFlight = new ArrayList<>();
+            if (!submit(completion, inFlight, headers, body)) {
+                throw new IOException("No thread left for " + method + " " + uri + ", "
+                        + executor.getMaximumPoolSize() + " attempts are in flight already");
+            }
+            int attempts = 1;
+            boolean hedged = false;
+            IOException lastError = null;
+            ClientHttpResponse lastFailure = null;
+
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (now >= deadline) {
+                        throw new SocketTimeoutException("Deadline of " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos)
+                                + " ms exceeded after " + attempts + " attempt(s) to " + method + " " + uri);
+                    }
+                    long wait = deadline - now;
+                    boolean hedgeDue = !hedged && extraAttemptsAllowed && attempts < maxAttempts;
+                    if (hedgeDue) {
+                        wait = Math.min(wait, Math.max(0, inFlight.get(0).started + hedgeDelayNanos - now));
+                    }
+
+                    Future<ClientHttpResponse> done = completion.poll(wait, TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        if (hedgeDue && System.nanoTime() < deadline) {
+                            hedged = true;
+                            if (retryBudget.tryWithdraw() && submit(completion, inFlight, headers, body)) {
+                                LOG.debug("Hedging {} {} after {} ms", method, uri, getHedgeDelay());
+                                attempts++;
+                            }
+                        }
+                        continue;
+                    }
+
+                    remove(inFlight, done);
+                    try {
+                        ClientHttpResponse response = done.get();
+                        if (!isFailure(response)) {
+                            closeQuietly(lastFailure);
+                            return response;
+                        }
+                        closeQuietly(lastFailure);
+                        lastFailure = response;
+                        lastError = null;
+                    } catch (ExecutionException e) {
+                        lastError = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                    }
+
+                    if (!inFlight.isEmpty()) {
+                        // the hedge may still succeed
+                        continue;
+                    }
+                    if (extraAttemptsAllowed && attempts < maxAttempts && retryBudget.tryWithdraw()
+                            && submit(completion, inFlight, headers, body)) {
+                        LOG.debug("Retrying {} {}", method, uri);
+                        attempts++;
+                        continue;
+                    }
+                    if (lastFailure != null) {
+                        ClientHttpResponse failure = lastFailure;
+                        lastFailure = null;
+                        return failure;
+                    }
+                    throw lastError;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + method + " " + uri);
+            } finally {
+                inFlight.forEach(Attempt::abandon);
+                closeQuietly(lastFailure);
+            }
+        }
+
+        /**
+         * @return false if all threads are busy and the attempt was not sent
+         */
+        private boolean submit(CompletionService<ClientHttpResponse> completion, List<Attempt> inFlight,
+                               HttpHeaders headers, byte[] body) {
+            Attempt attempt = new Attempt(headers, body);
+            try {
+                attempt.future = completion.submit(attempt);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("No thread for an attempt to {} {}", method, uri);
+                return false;
+            }
+            inFlight.add(attempt);
+            return true;
+        }
+
+        private void remove(List<Attempt> inFlight, Future<ClientHttpResponse> done) {
+            for (int i = 0; i < inFlight.size(); i++) {
+                if (inFlight.get(i).future == done) {
+                    inFlight.remove(i);
+                    return;
+                }
+            }
+            throw new IllegalStateException("Unknown attempt completed");
+        }
+
+        private void closeQuietly(ClientHttpResponse response) {
+            if (response != null) {
+                response.close();
+            }
+        }
+
+        /**
+         * Single attempt over the delegate factory. Abandoned attempt aborts its request if it can and closes the
+         * response as soon as it gets one.
+         */
+        private class Attempt implements Callable<ClientHttpResponse> {
+
+            private final HttpHeaders headers;
+            private final byte[] body;
+            private final long started = System.nanoTime();
+
+            private Future<ClientHttpResponse> future;
+            private ClientHttpRequest request;
+            private ClientHttpResponse response;
+            private boolean abandoned;
+            private boolean finished;
+
+            Attempt(HttpHeaders headers, byte[] body) {
+                this.headers = headers;
+                this.body = body;
+            }
+
+            @Override
+            public ClientHttpResponse call() throws IOException {
+                try {
+                    ClientHttpRequest created = delegate.createRequest(uri, method);
+                    synchronized (this) {
+                        if (abandoned) {
+                            throw new InterruptedIOException("Attempt to " + method + " " + uri + " is abandoned");
+                        }
+                        request = created;
+                    }
+                    created.getHeaders().putAll(headers);
+                    if (body.length > 0) {
+                        StreamUtils.copy(body, created.getBody());
+                    }
+                    ClientHttpResponse result = created.execute();
+                    // some factories (HttpURLConnection based ones for example) don't wait for the response in execute()
+                    result.getRawStatusCode();
+                    synchronized (this) {
+                        if (abandoned) {
+                            result.close();
+                        } else {
+                            response = result;
+                        }
+                    }
+                    return result;
+                } finally {
+                    finish();
+                }
+            }
+
+            void abandon() {
+                ClientHttpRequest running;
+                synchronized (this) {
+                    abandoned = true;
+                    if (response != null) {
+                        response.close();
+                    }
+                    running = response == null ? request : null;
+                }
+                finish();
+                if (running instanceof AbortableClientHttpRequest) {
+                    ((AbortableClientHttpRequest) running).abort();
+                }
+                // blocked socket IO ignores it, but the delegate may be better
+                future.cancel(true);
+            }
+
+            /**
+             * Records the latency once: when the attempt completes or, if it is abandoned earlier, when it is abandoned
+             */
+            private void finish() {
+                synchronized (this) {
+                    if (finished) {
+                        return;
+                    }
+                    finished = true;
+                }
+                recordLatency(System.nanoTime() - started);
+            }
+        }
+    }
+}
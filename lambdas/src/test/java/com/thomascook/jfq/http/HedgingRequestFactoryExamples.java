@@ -0,0 +1,266 @@
+package com.thomascook.jfq.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.jsonResponse;
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.like;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Shows how {@link HedgingClientHttpRequestFactory} deals with slow and failing upstream. WireMock is used to inject
+ * fixed and random delays.
+ */
+public class HedgingRequestFactoryExamples {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingRequestFactoryExamples.class);
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    private SimpleClientHttpRequestFactory simpleFactory;
+    private HedgingClientHttpRequestFactory hedgingFactory;
+
+    @Before
+    public void setUp() {
+        simpleFactory = new SimpleClientHttpRequestFactory();
+        simpleFactory.setConnectTimeout((int) TimeUnit.MINUTES.toMillis(1));
+        simpleFactory.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+
+        hedgingFactory = new HedgingClientHttpRequestFactory(simpleFactory, new RetryBudget(0.1, 1));
+        hedgingFactory.setDeadline(1000);
+        hedgingFactory.setInitialHedgeDelay(50);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hedgingFactory.destroy();
+    }
+
+    private URI uri(String path) {
+        return UriComponentsBuilder.newInstance().scheme("http").host("localhost").path(path).port(wireMockRule.port()).build().toUri();
+    }
+
+    /**
+     * One minute read timeout doesn't matter anymore, the caller waits for the deadline only
+     */
+    @Test
+    public void deadlineCutsSlowResponse() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/slow"))
+                .willReturn(like(jsonResponse(new RequestBean("some text", 234))).withFixedDelay(5000)));
+
+        RestTemplate restTemplate = new RestTemplate(hedgingFactory);
+        long start = System.nanoTime();
+        try {
+            restTemplate.getForObject(uri("/slow"), ResponseBean.class);
+            fail("Deadline should have been exceeded");
+        } catch (ResourceAccessException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Gave up after {} ms", elapsed);
+        assertTrue("Took " + elapsed + " ms", elapsed < 2000);
+    }
+
+    /**
+     * The first attempt hangs, the hedge comes back immediately and wins
+     */
+    @Test
+    public void hedgeWinsOverSlowAttempt() {
+        stubHedgingScenario();
+
+        RestTemplate restTemplate = new RestTemplate(hedgingFactory);
+        long start = System.nanoTime();
+        ResponseBean response = restTemplate.getForObject(uri("/hedged"), ResponseBean.class);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        LOG.info("Hedged response {} in {} ms", response, elapsed);
+        assertEquals(2, response.number);
+        assertTrue("Took " + elapsed + " ms", elapsed < 1000);
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/hedged")));
+    }
+
+    /**
+     * The losing attempt doesn't keep its thread for 5 seconds when the delegate can abort requests
+     */
+    @Test
+    public void loserIsAborted() throws Exception {
+        Http2ClientHttpRequestFactory http2Factory = new Http2ClientHttpRequestFactory();
+        http2Factory.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+        try {
+            assertLoserAborted(http2Factory);
+        } finally {
+            http2Factory.destroy();
+        }
+    }
+
+    @Test
+    public void apacheLoserIsAborted() throws Exception {
+        AbortableHttpComponentsClientHttpRequestFactory apacheFactory = new AbortableHttpComponentsClientHttpRequestFactory();
+        apacheFactory.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+        try {
+            assertLoserAborted(apacheFactory);
+        } finally {
+            apacheFactory.destroy();
+        }
+    }
+
+    private void assertLoserAborted(ClientHttpRequestFactory delegate) throws Exception {
+        stubHedgingScenario();
+        HedgingClientHttpRequestFactory abortingFactory = new HedgingClientHttpRequestFactory(delegate, new RetryBudget(0.1, 1));
+        abortingFactory.setInitialHedgeDelay(50);
+        try {
+            ResponseBean response = new RestTemplate(abortingFactory).getForObject(uri("/hedged"), ResponseBean.class);
+            assertEquals(2, response.number);
+
+            long start = System.nanoTime();
+            while (abortingFactory.getAttemptsInFlight() > 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2)) {
+                Thread.sleep(10);
+            }
+            LOG.info("Loser gone after {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            assertEquals(0, abortingFactory.getAttemptsInFlight());
+        } finally {
+            abortingFactory.destroy();
+        }
+    }
+
+    /**
+     * With no free thread the call fails right away instead of queueing behind hanging attempts
+     */
+    @Test
+    public void attemptsAreBounded() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/slow"))
+                .willReturn(like(jsonResponse(new RequestBean("some text", 234))).withFixedDelay(5000)));
+        hedgingFactory.setMaxConcurrentAttempts(1);
+
+        RestTemplate restTemplate = new RestTemplate(hedgingFactory);
+        try {
+            restTemplate.getForObject(uri("/slow"), ResponseBean.class);
+            fail("Deadline should have been exceeded");
+        } catch (ResourceAccessException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        long start = System.nanoTime();
+        try {
+            restTemplate.getForObject(uri("/slow"), ResponseBean.class);
+            fail("The only thread is still busy with the abandoned attempt");
+        } catch (ResourceAccessException e) {
+            LOG.info("Rejected: {}", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/slow")));
+    }
+
+    /**
+     * The delay moves from the initial value to the observed percentile once enough attempts are recorded
+     */
+    @Test
+    public void hedgeDelayFollowsPercentile() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/fixed"))
+                .willReturn(like(jsonResponse(new RequestBean("some text", 234))).withFixedDelay(50)));
+        hedgingFactory.setInitialHedgeDelay(900);
+        hedgingFactory.setHedgePercentile(0.5);
+
+        RestTemplate restTemplate = new RestTemplate(hedgingFactory);
+        for (int i = 0; i < 63; i++) {
+            restTemplate.getForObject(uri("/fixed"), ResponseBean.class);
+        }
+        assertEquals(900, hedgingFactory.getHedgeDelay());
+
+        restTemplate.getForObject(uri("/fixed"), ResponseBean.class);
+        long delay = hedgingFactory.getHedgeDelay();
+        LOG.info("Hedge delay after 64 attempts: {} ms", delay);
+        assertTrue("Hedge delay " + delay, delay >= 50 && delay < 200);
+    }
+
+    /**
+     * Every request fails but the upstream gets only a fraction of extra attempts
+     */
+    @Test
+    public void retryBudgetDoesNotAmplifyOutage() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/down")).willReturn(aResponse().withStatus(503)));
+
+        RestTemplate restTemplate = new RestTemplate(hedgingFactory);
+        int calls = 200;
+        for (int i = 0; i < calls; i++) {
+            try {
+                restTemplate.getForObject(uri("/down"), ResponseBean.class);
+                fail("Upstream is down");
+            } catch (HttpServerErrorException e) {
+                assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+            }
+        }
+
+        int received = wireMockRule.findAll(getRequestedFor(urlPathEqualTo("/down"))).size();
+        LOG.info("{} calls made {} requests", calls, received);
+        // initial balance of the budget + 10% of the calls + reserve for the time spent
+        assertTrue("Too many requests: " + received, received <= calls + 10 + calls / 10 + 5);
+    }
+
+    /**
+     * Not a proper benchmark, but shows how the tail shrinks when a part of the responses is randomly slow
+     */
+    @Test
+    public void compareTailLatency() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/random"))
+                .willReturn(like(jsonResponse(new RequestBean("some text", 234))).withLogNormalRandomDelay(20, 0.6)));
+
+        hedgingFactory.setHedgePercentile(0.9);
+        long[] plain = measure(new RestTemplate(simpleFactory), 300);
+        long[] hedged = measure(new RestTemplate(hedgingFactory), 300);
+
+        LOG.info("Plain:  p50 {} ms, p99 {} ms, max {} ms", percentile(plain, 0.5), percentile(plain, 0.99), plain[plain.length - 1]);
+        LOG.info("Hedged: p50 {} ms, p99 {} ms, max {} ms (hedge delay {} ms)",
+                percentile(hedged, 0.5), percentile(hedged, 0.99), hedged[hedged.length - 1], hedgingFactory.getHedgeDelay());
+    }
+
+    private void stubHedgingScenario() {
+        wireMockRule.stubFor(get(urlPathEqualTo("/hedged")).inScenario("hedging")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(like(jsonResponse(new RequestBean("slow", 1))).withFixedDelay(5000))
+                .willSetStateTo("hedge"));
+        wireMockRule.stubFor(get(urlPathEqualTo("/hedged")).inScenario("hedging")
+                .whenScenarioStateIs("hedge")
+                .willReturn(like(jsonResponse(new RequestBean("fast", 2)))));
+    }
+
+    private long[] measure(RestTemplate restTemplate, int calls) {
+        long[] latencies = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            restTemplate.getForObject(uri("/random"), ResponseBean.class);
+            latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+}
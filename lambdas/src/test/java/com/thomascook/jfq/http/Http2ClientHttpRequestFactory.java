@@ -0,0 +1,380 @@
+package com.thomascook.jfq.http;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClientHttpRequestFactory} backed by OkHttp which speaks HTTP/2. Unlike {@link
+ * org.springframework.http.client.SimpleClientHttpRequestFactory} (one request per connection at a time) all
+ * concurrent RestTemplate exchanges with the same host are multiplexed as separate streams over a single connection.
+ * <p>
+ * For 'https' URIs the protocol is negotiated with ALPN, so servers that know nothing about HTTP/2 are served over
+ * HTTP/1.1 by OkHttp itself. Plain 'http' URIs are tried with h2c 'prior knowledge' first (that's what makes local
+ * testing possible). Before the first request to a host the factory probes it with the HTTP/2 connection preface on a
+ * separate connection: a h2c server answers with its SETTINGS frame, anything else (an HTTP/1.1 error, closed or reset
+ * connection) means HTTP/1.1. Requests themselves are never replayed over another protocol. The verdict is cached for
+ * {@link #PROTOCOL_TTL_MINUTES} minutes, a failed h2c exchange drops it, so the host is probed again next time.
+ * Concurrent requests to a host wait for a single probe, which connects with DNS and socket factory of the client.
+ * When the client goes through a proxy there is no probing, plain 'http' is HTTP/1.1 then.
+ * <p>
+ * The factory owns connection pool and threads of the client, so call {@link #destroy()} when you are done with it
+ * (Spring does it for you when the factory is a bean).
+ */
+public class Http2ClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Http2ClientHttpRequestFactory.class);
+
+    private static final List<Protocol> NEGOTIATED = Collections.unmodifiableList(
+            Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+
+    static final long PROTOCOL_TTL_MINUTES = 10;
+
+    // connection preface followed by an empty SETTINGS frame, see RFC 7540 3.5
+    private static final byte[] PREFACE = concat("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+            new byte[]{0, 0, 0, 0x4, 0, 0, 0, 0, 0});
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int SETTINGS = 0x4;
+
+    private final Map<String, KnownProtocol> protocols = new ConcurrentHashMap<>();
+    // concurrent requests to a host nobody has probed yet wait for the same probe
+    private final Map<String, CompletableFuture<KnownProtocol>> probes = new ConcurrentHashMap<>();
+
+    private OkHttpClient negotiating;
+    private OkHttpClient h2c;
+    private OkHttpClient http1;
+
+    public Http2ClientHttpRequestFactory() {
+        this(new OkHttpClient());
+    }
+
+    /**
+     * All clients created by the factory share connection pool and dispatcher of the given one.
+     */
+    public Http2ClientHttpRequestFactory(OkHttpClient client) {
+        Validate.notNull(client);
+        initClients(client);
+    }
+
+    /**
+     * Connect timeout in milliseconds. Zero means no timeout.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        initClients(negotiating.newBuilder().connectTimeout(connectTimeout, TimeUnit.MILLISECONDS).build());
+    }
+
+    /**
+     * Read timeout in milliseconds. Zero means no timeout.
+     */
+    public void setReadTimeout(int readTimeout) {
+        initClients(negotiating.newBuilder().readTimeout(readTimeout, TimeUnit.MILLISECONDS).build());
+    }
+
+    private void initClients(OkHttpClient client) {
+        this.negotiating = client.newBuilder().protocols(NEGOTIATED).build();
+        this.h2c = client.newBuilder().protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)).build();
+        this.http1 = client.newBuilder().protocols(Collections.singletonList(Protocol.HTTP_1_1)).build();
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new Http2ClientHttpRequest(uri, httpMethod);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        negotiating.dispatcher().executorService().shutdown();
+        negotiating.connectionPool().evictAll();
+    }
+
+    private boolean isProxied(Request request) {
+        Proxy proxy = negotiating.proxy();
+        if (proxy != null) {
+            return proxy.type() != Proxy.Type.DIRECT;
+        }
+        List<Proxy> selected = negotiating.proxySelector().select(request.url().uri());
+        return selected != null && selected.stream().anyMatch(candidate -> candidate.type() != Proxy.Type.DIRECT);
+    }
+
+    private KnownProtocol probeOnce(String authority, String host, int port) throws IOException {
+        CompletableFuture<KnownProtocol> mine = new CompletableFuture<>();
+        CompletableFuture<KnownProtocol> running = probes.putIfAbsent(authority, mine);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the protocol of " + authority);
+            } catch (ExecutionException e) {
+                throw new IOException("Can't find out the protocol of " + authority, e.getCause());
+            }
+        }
+        try {
+            KnownProtocol known = new KnownProtocol(probe(host, port));
+            protocols.put(authority, known);
+            LOG.debug("{} speaks {}", authority, known.protocol);
+            mine.complete(known);
+            return known;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            probes.remove(authority, mine);
+        }
+    }
+
+    /**
+     * Connects the same way the client does: with its DNS and socket factory. Connection problems are thrown, they
+     * say nothing about the protocol and must not be cached
+     */
+    private Protocol probe(String host, int port) throws IOException {
+        IOException connectFailure = null;
+        for (InetAddress address : negotiating.dns().lookup(host)) {
+            try (Socket socket = negotiating.socketFactory().createSocket()) {
+                try {
+                    socket.connect(new InetSocketAddress(address, port), negotiating.connectTimeoutMillis());
+                } catch (IOException e) {
+                    // try the next address like the client would
+                    connectFailure = e;
+                    continue;
+                }
+                return probe(socket);
+            }
+        }
+        throw connectFailure != null ? connectFailure : new UnknownHostException(host);
+    }
+
+    private Protocol probe(Socket socket) throws IOException {
+        socket.setSoTimeout(negotiating.readTimeoutMillis());
+        byte[] header = new byte[FRAME_HEADER_LENGTH];
+        int read = 0;
+        try {
+            socket.getOutputStream().write(PREFACE);
+            socket.getOutputStream().flush();
+            InputStream in = socket.getInputStream();
+            int count;
+            while (read < header.length && (count = in.read(header, read, header.length - read)) >= 0) {
+                read += count;
+            }
+        } catch (SocketTimeoutException e) {
+            throw e;
+        } catch (SocketException e) {
+            // HTTP/1.1 servers may reset the connection instead of answering the preface
+            return Protocol.HTTP_1_1;
+        }
+        boolean settings = read == header.length && header[3] == SETTINGS
+                && header[5] == 0 && header[6] == 0 && header[7] == 0 && header[8] == 0;
+        return settings ? Protocol.H2_PRIOR_KNOWLEDGE : Protocol.HTTP_1_1;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static class KnownProtocol {
+
+        private final Protocol protocol;
+        private final long expiresAt = System.nanoTime() + TimeUnit.MINUTES.toNanos(PROTOCOL_TTL_MINUTES);
+
+        KnownProtocol(Protocol protocol) {
+            this.protocol = protocol;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+
+    private class Http2ClientHttpRequest extends AbstractClientHttpRequest implements AbortableClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream bufferedOutput = new ByteArrayOutputStream(1024);
+
+        private Call call;
+        private boolean aborted;
+
+        Http2ClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+            return bufferedOutput;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            byte[] content = bufferedOutput.toByteArray();
+            MediaType contentType = headers.getContentType() == null ? null : MediaType.parse(headers.getContentType().toString());
+            RequestBody body = content.length > 0 || requiresBody(method)
+                    ? RequestBody.create(contentType, content)
+                    : null;
+
+            Request.Builder builder = new Request.Builder().url(uri.toURL()).method(method.name(), body);
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                // OkHttp calculates it from the body
+                if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    builder.addHeader(header.getKey(), value);
+                }
+            }
+            return new Http2ClientHttpResponse(call(builder.build()));
+        }
+
+        private Response call(Request request) throws IOException {
+            if (request.isHttps()) {
+                return execute(negotiating, request);
+            }
+
+            if (isProxied(request)) {
+                // h2c can't go through an HTTP proxy, and the probe would talk to the proxy anyway
+                return execute(http1, request);
+            }
+
+            String authority = request.url().host() + ":" + request.url().port();
+            KnownProtocol known = protocols.get(authority);
+            if (known == null || known.isExpired()) {
+                known = probeOnce(authority, request.url().host(), request.url().port());
+            }
+            if (known.protocol == Protocol.HTTP_1_1) {
+                return execute(http1, request);
+            }
+
+            try {
+                return execute(h2c, request);
+            } catch (IOException e) {
+                // the server may have changed, find out again next time instead of guessing now
+                protocols.remove(authority, known);
+                throw e;
+            } catch (NoSuchElementException e) {
+                // OkHttp runs out of routes this way when a fresh connection dies right away
+                protocols.remove(authority, known);
+                throw new IOException("h2c connection to " + authority + " failed", e);
+            }
+        }
+
+        private Response execute(OkHttpClient client, Request request) throws IOException {
+            Call started = client.newCall(request);
+            synchronized (this) {
+                if (aborted) {
+                    throw new IOException("Canceled");
+                }
+                call = started;
+            }
+            return started.execute();
+        }
+
+        @Override
+        public void abort() {
+            Call started;
+            synchronized (this) {
+                aborted = true;
+                started = call;
+            }
+            if (started != null) {
+                started.cancel();
+            }
+        }
+
+        private boolean requiresBody(HttpMethod method) {
+            return method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH;
+        }
+    }
+
+    private static class Http2ClientHttpResponse extends AbstractClientHttpResponse {
+
+        private final Response response;
+        private HttpHeaders headers;
+
+        Http2ClientHttpResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.code();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.message();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                HttpHeaders result = new HttpHeaders();
+                for (String name : response.headers().names()) {
+                    result.put(name, response.headers(name));
+                }
+                headers = result;
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.body().byteStream();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
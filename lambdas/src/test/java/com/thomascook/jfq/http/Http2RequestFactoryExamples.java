@@ -0,0 +1,300 @@
+package com.thomascook.jfq.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.matching.EqualToJsonPattern;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.jsonResponse;
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.like;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static com.github.tomakehurst.wiremock.matching.RequestPatternBuilder.allRequests;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * WireMock (at least the version we use) can't do HTTP/2, so h2c side of {@link Http2ClientHttpRequestFactory} is
+ * shown against OkHttp's MockWebServer. WireMock is still handy to show the fallback to HTTP/1.1.
+ */
+public class Http2RequestFactoryExamples {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Http2RequestFactoryExamples.class);
+
+    private static final int THREADS = 64;
+    private static final int REQUESTS_PER_THREAD = 20;
+    private static final long SERVER_LATENCY_MILLIS = 10;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    private MockWebServer h2cServer;
+    private MockWebServer http1Server;
+    private ConnectionPool connectionPool;
+    private Http2ClientHttpRequestFactory http2Factory;
+
+    @Before
+    public void setUp() throws Exception {
+        h2cServer = startServer(Protocol.H2_PRIOR_KNOWLEDGE);
+        http1Server = startServer(Protocol.HTTP_1_1);
+
+        connectionPool = new ConnectionPool();
+        http2Factory = new Http2ClientHttpRequestFactory(new OkHttpClient.Builder().connectionPool(connectionPool).build());
+        http2Factory.setConnectTimeout((int) TimeUnit.MINUTES.toMillis(1));
+        http2Factory.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        http2Factory.destroy();
+        h2cServer.shutdown();
+        http1Server.shutdown();
+    }
+
+    /**
+     * Every response of the server is a bit late, just like in the real life
+     */
+    private MockWebServer startServer(Protocol protocol) throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setProtocols(Collections.singletonList(protocol));
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"textField\":\"some text\",\"number\":234}")
+                        .setHeadersDelay(SERVER_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void multiplexConcurrentExchanges() throws Exception {
+        RestTemplate restTemplate = new RestTemplate(http2Factory);
+        URI uri = h2cServer.url("/").uri();
+
+        long elapsed = runConcurrently(restTemplate, uri);
+
+        assertEquals(THREADS * REQUESTS_PER_THREAD, h2cServer.getRequestCount());
+        assertEquals("All the exchanges have to share a single connection", 1, connectionPool.connectionCount());
+        LOG.info("h2c: {} requests in {} ms", h2cServer.getRequestCount(), elapsed);
+    }
+
+    @Test
+    public void fallBackToHttp11() throws Exception {
+        wireMockRule.stubFor(
+                post(urlPathMatching("/"))
+                        .withRequestBody(new EqualToJsonPattern("{\"field1\":\"value1\"}", false, false)).willReturn(
+                        like(jsonResponse(new RequestBean("some text", 234)))
+                ));
+        URI uri = UriComponentsBuilder.newInstance().scheme("http").host("localhost").path("/").port(wireMockRule.port()).build().toUri();
+        RestTemplate restTemplate = new RestTemplate(http2Factory);
+
+        //RestTemplate is not customized here, so no String[] in the payload
+        Map<String, String> payload = Collections.singletonMap("field1", "value1");
+
+        //the probe before the first request finds out that server is HTTP/1.1 only, both requests go there straight away
+        LOG.info("Over HTTP/1.1: {}", restTemplate.postForObject(uri, payload, ResponseBean.class));
+        LOG.info("Over HTTP/1.1: {}", restTemplate.postForObject(uri, payload, ResponseBean.class));
+
+        wireMockRule.verify(2, allRequests());
+    }
+
+    /**
+     * The server rejects the preface at once, which used to make the fallback flaky. Every POST has to reach the
+     * server exactly once, and the protocol is found out once even though the requests come concurrently.
+     */
+    @Test
+    public void prefaceRejectedRightAway() throws Exception {
+        AtomicInteger prefaces = new AtomicInteger();
+        AtomicInteger posts = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> serveHttp11Only(server, prefaces, posts));
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            URI uri = UriComponentsBuilder.newInstance().scheme("http").host("localhost").path("/")
+                    .port(server.getLocalPort()).build().toUri();
+            RestTemplate restTemplate = new RestTemplate(http2Factory);
+            // all at once, so that they find the host unknown at the same time
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<ResponseBean>> responses = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    responses.add(executor.submit(() -> restTemplate.postForObject(uri,
+                            Collections.singletonMap("field1", "value1"), ResponseBean.class)));
+                }
+                for (Future<ResponseBean> response : responses) {
+                    assertEquals(234, response.get().number);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        assertEquals(1, prefaces.get());
+        assertEquals(20, posts.get());
+    }
+
+    /**
+     * A reset stream of a real h2c server is an error of that exchange: it is not replayed over HTTP/1.1 and doesn't
+     * make the host HTTP/1.1 only.
+     */
+    @Test
+    public void streamResetIsNotReplayed() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        // INTERNAL_ERROR, OkHttp retries REFUSED_STREAM by itself
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.RESET_STREAM_AT_START).setHttp2ErrorCode(2));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json")
+                .setBody("{\"textField\":\"some text\",\"number\":234}"));
+        server.start();
+        try {
+            RestTemplate restTemplate = new RestTemplate(http2Factory);
+            Map<String, String> payload = Collections.singletonMap("field1", "value1");
+            try {
+                restTemplate.postForObject(server.url("/").uri(), payload, ResponseBean.class);
+                fail("Reset stream has to fail the exchange");
+            } catch (ResourceAccessException e) {
+                LOG.info("Failed as expected: {}", e.getMessage());
+            }
+
+            // the server speaks h2c only, so this one would fail if the host was pinned to HTTP/1.1
+            assertEquals(234, restTemplate.postForObject(server.url("/").uri(), payload, ResponseBean.class).number);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private void serveHttp11Only(ServerSocket server, AtomicInteger prefaces, AtomicInteger posts) {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+                String requestLine = in.readLine();
+                if (requestLine == null) {
+                    continue;
+                }
+                if (requestLine.startsWith("PRI ")) {
+                    prefaces.incrementAndGet();
+                    out.write("HTTP/1.1 400 Bad Request\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"
+                            .getBytes(StandardCharsets.US_ASCII));
+                    continue;
+                }
+                int contentLength = 0;
+                String header;
+                while ((header = in.readLine()) != null && !header.isEmpty()) {
+                    if (header.toLowerCase().startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+                    }
+                }
+                for (int i = 0; i < contentLength; i++) {
+                    in.read();
+                }
+                if (requestLine.startsWith("POST ")) {
+                    posts.incrementAndGet();
+                }
+                byte[] body = "{\"textField\":\"some text\",\"number\":234}".getBytes(StandardCharsets.US_ASCII);
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nConnection: close\r\nContent-Length: "
+                        + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(body);
+            } catch (IOException e) {
+                // closed by the test
+            }
+        }
+    }
+
+    /**
+     * Not a proper benchmark (no warm up, single run) but good enough to see the difference. Both servers have the
+     * same latency, so the difference comes from connection handling on the client side only.
+     */
+    @Test
+    public void compareWithSimpleClientHttpRequestFactory() throws Exception {
+        SimpleClientHttpRequestFactory simpleFactory = new SimpleClientHttpRequestFactory();
+        simpleFactory.setConnectTimeout((int) TimeUnit.MINUTES.toMillis(1));
+        simpleFactory.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+
+        long simpleElapsed = runConcurrently(new RestTemplate(simpleFactory), http1Server.url("/").uri());
+        long http2Elapsed = runConcurrently(new RestTemplate(http2Factory), h2cServer.url("/").uri());
+
+        int total = THREADS * REQUESTS_PER_THREAD;
+        LOG.info("SimpleClientHttpRequestFactory (HTTP/1.1): {} requests in {} ms", total, simpleElapsed);
+        LOG.info("Http2ClientHttpRequestFactory (h2c): {} requests in {} ms, {} connection(s)",
+                total, http2Elapsed, connectionPool.connectionCount());
+        assertEquals(total, http1Server.getRequestCount());
+        assertEquals(total, h2cServer.getRequestCount());
+    }
+
+    private long runConcurrently(RestTemplate restTemplate, URI uri) throws Exception {
+        Map<String, String[]> payload = new HashMap<>();
+        payload.put("field1", new String[]{"value1"});
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                tasks.add(() -> {
+                    int done = 0;
+                    for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                        ResponseBean response = restTemplate.postForObject(uri, payload, ResponseBean.class);
+                        assertEquals(234, response.number);
+                        done++;
+                    }
+                    return done;
+                });
+            }
+
+            long start = System.nanoTime();
+            int done = 0;
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                done += result.get();
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(done == THREADS * REQUESTS_PER_THREAD);
+            return elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
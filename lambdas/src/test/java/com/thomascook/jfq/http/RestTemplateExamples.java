@@ -68,7 +68,8 @@ public class RestTemplateExamples {
     private RestTemplate buildCustomizedRestTemplate() {
 
         /**
-         * ClientHttpRequestFactory allows to specify some a bit low level but important things
+         * ClientHttpRequestFactory allows to specify some a bit low level but important things.
+         * SimpleClientHttpRequestFactory speaks HTTP/1.1 only, see {@link Http2ClientHttpRequestFactory} for HTTP/2
          */
         SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
 
@@ -80,7 +81,8 @@ public class RestTemplateExamples {
         factory.setBufferRequestBody(false);
 
         /**
-         * You can set custom timeouts (in milliseconds).
+         * You can set custom timeouts (in milliseconds). They apply to every single connect/read, see
+         * {@link HedgingClientHttpRequestFactory} for the deadline of the whole call.
          */
         factory.setConnectTimeout((int)TimeUnit.MINUTES.toMillis(1));
         factory.setReadTimeout((int)TimeUnit.MINUTES.toMillis(1));
@@ -0,0 +1,62 @@
+package com.thomascook.jfq.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits extra attempts (retries and hedges) to a fraction of the original traffic. Every original request deposits
+ * {@code ratio} of a token, every extra attempt withdraws a whole one. On top of that there is a small reserve that
+ * refills with time, so rarely used clients can still retry.
+ * <p>
+ * The point is that during an outage, when every request fails, the load on the upstream grows by {@code ratio} at
+ * most instead of being multiplied by the number of attempts.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double minPerSecond;
+    private final double capacity;
+
+    private double balance;
+    private long lastRefill;
+
+    /**
+     * @param ratio        extra attempts allowed per original request, e.g. 0.1 for 10%
+     * @param minPerSecond extra attempts allowed per second regardless of the traffic
+     */
+    public RetryBudget(double ratio, double minPerSecond) {
+        Validate.isTrue(ratio >= 0 && ratio <= 1, "Ratio should be within [0, 1]");
+        Validate.isTrue(minPerSecond >= 0, "Negative reserve");
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        // enough to serve a burst of 10 seconds of reserve or of 100 deposits
+        this.capacity = Math.max(1, Math.max(minPerSecond * 10, ratio * 100));
+        this.balance = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized void deposit() {
+        refill();
+        balance = Math.min(capacity, balance + ratio);
+    }
+
+    /**
+     * @return true if the extra attempt can be made
+     */
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (now - lastRefill) / (double) TimeUnit.SECONDS.toNanos(1);
+        balance = Math.min(capacity, balance + seconds * minPerSecond);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,59 @@
+package com.thomascook.jfq.http.replay;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Identity of a recorded exchange: HTTP method, URL (path and query) and hash of the canonical request body.
+ * See {@link ReplayCorpus#keyOf(String, String, byte[])} for how bodies are canonicalised.
+ */
+public final class ExchangeKey {
+
+    private final String method;
+    private final String url;
+    private final long bodyHash;
+
+    public ExchangeKey(String method, String url, long bodyHash) {
+        Validate.notBlank(method);
+        Validate.notBlank(url);
+        this.method = method;
+        this.url = url;
+        this.bodyHash = bodyHash;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getBodyHash() {
+        return bodyHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ExchangeKey that = (ExchangeKey) o;
+
+        return bodyHash == that.bodyHash
+                && method.equals(that.method)
+                && url.equals(that.url);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = method.hashCode();
+        result = 31 * result + url.hashCode();
+        result = 31 * result + (int) (bodyHash ^ (bodyHash >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url + " body#" + Long.toHexString(bodyHash);
+    }
+}
@@ -0,0 +1,44 @@
+package com.thomascook.jfq.http.replay;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Response as it was received from the real server. Hop-by-hop headers and Content-Length are not kept, they are
+ * produced by the server that replays the response.
+ */
+public class RecordedResponse {
+
+    private final int status;
+    private final List<String[]> headers;
+    private final byte[] body;
+
+    /**
+     * @param headers name-value pairs
+     */
+    public RecordedResponse(int status, List<String[]> headers, byte[] body) {
+        Validate.isTrue(status >= 100 && status < 600, "Wrong HTTP status %d", status);
+        Validate.notNull(headers);
+        Validate.notNull(body);
+        this.status = status;
+        this.headers = Collections.unmodifiableList(headers);
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public List<String[]> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Not copied for the sake of speed, don't modify
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
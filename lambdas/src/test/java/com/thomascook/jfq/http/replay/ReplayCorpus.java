@@ -0,0 +1,178 @@
+package com.thomascook.jfq.http.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Recorded exchanges indexed by {@link ExchangeKey}. Finding a response is a single hash lookup no matter how many
+ * exchanges there are, unlike WireMock which evaluates every stub (and parses JSON for every EqualToJsonPattern) on
+ * every request.
+ * <p>
+ * On disk the corpus is a gzipped stream of binary records, see {@link #save(Path)}.
+ * <p>
+ * Thread safe.
+ */
+public class ReplayCorpus {
+
+    private static final int MAGIC = 0x4a465152; // "JFQR"
+    // 2: strings are length-prefixed UTF-8 instead of writeUTF limited to 64K
+    private static final int VERSION = 2;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // sorted keys make {"a":1,"b":2} and {"b":2,"a":1} the same
+    private static final ObjectMapper CANONICAL = new ObjectMapper()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final Map<ExchangeKey, RecordedResponse> exchanges = new ConcurrentHashMap<>();
+
+    /**
+     * Bodies that look like JSON are parsed and written back compactly with object keys sorted, so formatting and
+     * order of the fields don't matter (the same way as for WireMock's EqualToJsonPattern). Anything else is hashed
+     * as is.
+     */
+    public static ExchangeKey keyOf(String method, String url, byte[] body) {
+        return new ExchangeKey(method, url, hash(canonicalise(body)));
+    }
+
+    static byte[] canonicalise(byte[] body) {
+        if (!looksLikeJson(body)) {
+            return body;
+        }
+        try {
+            return CANONICAL.writeValueAsBytes(CANONICAL.readValue(body, Object.class));
+        } catch (IOException e) {
+            // not a JSON after all
+            return body;
+        }
+    }
+
+    private static boolean looksLikeJson(byte[] body) {
+        for (byte b : body) {
+            if (!Character.isWhitespace(b)) {
+                return b == '{' || b == '[';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64-bit FNV-1a. Not cryptographic but collisions are unlikely enough for a test corpus.
+     */
+    static long hash(byte[] bytes) {
+        long hash = FNV_OFFSET;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * The latest recording wins if the same key is recorded twice
+     */
+    public void record(ExchangeKey key, RecordedResponse response) {
+        Validate.notNull(key);
+        Validate.notNull(response);
+        exchanges.put(key, response);
+    }
+
+    /**
+     * @return recorded response or null
+     */
+    public RecordedResponse find(ExchangeKey key) {
+        return exchanges.get(key);
+    }
+
+    public int size() {
+        return exchanges.size();
+    }
+
+    /**
+     * Format (before gzip): magic, version, number of records, then for each record method, URL, body hash, status,
+     * number of headers followed by name-value pairs, body length followed by body bytes. Strings are written the same
+     * way as bodies: length followed by UTF-8 bytes.
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file), 65536)))) {
+            List<Map.Entry<ExchangeKey, RecordedResponse>> snapshot = new ArrayList<>(exchanges.entrySet());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<ExchangeKey, RecordedResponse> entry : snapshot) {
+                ExchangeKey key = entry.getKey();
+                RecordedResponse response = entry.getValue();
+                writeString(out, key.getMethod());
+                writeString(out, key.getUrl());
+                out.writeLong(key.getBodyHash());
+                out.writeShort(response.getStatus());
+                out.writeShort(response.getHeaders().size());
+                for (String[] header : response.getHeaders()) {
+                    writeString(out, header[0]);
+                    writeString(out, header[1]);
+                }
+                out.writeInt(response.getBody().length);
+                out.write(response.getBody());
+            }
+        }
+    }
+
+    public static ReplayCorpus load(Path file) throws IOException {
+        ReplayCorpus corpus = new ReplayCorpus();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 65536)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a replay corpus");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of replay corpus " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ExchangeKey key = new ExchangeKey(readString(in), readString(in), in.readLong());
+                int status = in.readUnsignedShort();
+                int headerCount = in.readUnsignedShort();
+                List<String[]> headers = new ArrayList<>(headerCount);
+                for (int h = 0; h < headerCount; h++) {
+                    headers.add(new String[]{readString(in), readString(in)});
+                }
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                corpus.record(key, new RecordedResponse(status, headers, body));
+            }
+        }
+        return corpus;
+    }
+
+    // writeUTF can't do more than 65535 bytes, a long query string or cookie is enough to hit that
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
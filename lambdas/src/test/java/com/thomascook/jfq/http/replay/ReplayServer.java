@@ -0,0 +1,218 @@
+package com.thomascook.jfq.http.replay;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Embeddable record-and-replay HTTP server. Runs on Jetty that comes with WireMock, so it can be used alongside
+ * {@link com.github.tomakehurst.wiremock.junit.WireMockRule}.
+ * <p>
+ * In recording mode every request is proxied to the target server (WireMock, real upstream, whatever) and the
+ * exchange is added to the {@link ReplayCorpus}. Save the corpus to a file afterwards. In replaying mode responses are
+ * served from the corpus only, requests that were never recorded get 404.
+ * <pre>
+ * ReplayServer recorder = ReplayServer.recording(URI.create("http://localhost:" + wireMockRule.port())).start();
+ * // run tests against recorder.baseUri()
+ * recorder.stop();
+ * recorder.getCorpus().save(file);
+ *
+ * ReplayServer replayer = ReplayServer.replaying(ReplayCorpus.load(file)).start();
+ * </pre>
+ */
+public class ReplayServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayServer.class);
+
+    // these describe the particular connection or the particular encoding of the body, not the exchange
+    private static final Set<String> NOT_RECORDED_HEADERS = caseInsensitive(
+            "Connection", "Keep-Alive", "Transfer-Encoding", "Content-Length", "Content-Encoding", "Date", "Server",
+            "Host", "Upgrade", "TE", "Trailer", "Proxy-Connection");
+
+    private final ReplayCorpus corpus;
+    private final URI target;
+    private final CloseableHttpClient client;
+    private final Server server;
+    private final ServerConnector connector;
+
+    private ReplayServer(ReplayCorpus corpus, URI target, int port, int threads) {
+        this.corpus = corpus;
+        this.target = target;
+        // redirects, cookies and compression are the business of the recorded client, the exchange goes through as is
+        this.client = target == null ? null : HttpClients.custom()
+                .disableRedirectHandling()
+                .disableCookieManagement()
+                .disableContentCompression()
+                .setMaxConnPerRoute(threads)
+                .setMaxConnTotal(threads)
+                .build();
+        this.server = new Server(new QueuedThreadPool(threads));
+        this.connector = new ServerConnector(server);
+        connector.setPort(port);
+        server.addConnector(connector);
+        server.setHandler(new ExchangeHandler());
+    }
+
+    /**
+     * Server that proxies requests to the target and records exchanges into a new corpus. Listens on a random port.
+     */
+    public static ReplayServer recording(URI target) {
+        Validate.notNull(target);
+        return new ReplayServer(new ReplayCorpus(), target, 0, 200);
+    }
+
+    /**
+     * Server that replays exchanges from the corpus. Listens on a random port.
+     */
+    public static ReplayServer replaying(ReplayCorpus corpus) {
+        return replaying(corpus, 0, 200);
+    }
+
+    public static ReplayServer replaying(ReplayCorpus corpus, int port, int threads) {
+        Validate.notNull(corpus);
+        Validate.isTrue(threads > 0);
+        return new ReplayServer(corpus, null, port, threads);
+    }
+
+    public ReplayServer start() throws Exception {
+        server.start();
+        LOG.info("{} on port {} with {} exchange(s)", target == null ? "Replaying" : "Recording " + target,
+                port(), corpus.size());
+        return this;
+    }
+
+    public void stop() throws Exception {
+        try {
+            server.stop();
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    public int port() {
+        return connector.getLocalPort();
+    }
+
+    public URI baseUri() {
+        return URI.create("http://localhost:" + port());
+    }
+
+    public ReplayCorpus getCorpus() {
+        return corpus;
+    }
+
+    private static Set<String> caseInsensitive(String... names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        set.addAll(Arrays.asList(names));
+        return Collections.unmodifiableSet(set);
+    }
+
+    private class ExchangeHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String path, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+            baseRequest.setHandled(true);
+
+            String url = request.getQueryString() == null ? request.getRequestURI() : request.getRequestURI() + "?" + request.getQueryString();
+            byte[] body = readBody(request);
+            ExchangeKey key = ReplayCorpus.keyOf(request.getMethod(), url, body);
+
+            RecordedResponse recorded = target == null ? corpus.find(key) : proxy(request, url, body);
+            if (recorded == null) {
+                LOG.warn("No recorded exchange for {}", key);
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.setContentType("text/plain");
+                response.getOutputStream().write(("No recorded exchange for " + key).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (target != null) {
+                corpus.record(key, recorded);
+            }
+
+            response.setStatus(recorded.getStatus());
+            for (String[] header : recorded.getHeaders()) {
+                response.addHeader(header[0], header[1]);
+            }
+            response.setContentLength(recorded.getBody().length);
+            response.getOutputStream().write(recorded.getBody());
+        }
+
+        private byte[] readBody(HttpServletRequest request) throws IOException {
+            InputStream in = request.getInputStream();
+            if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            return StreamUtils.copyToByteArray(in);
+        }
+
+        private RecordedResponse proxy(HttpServletRequest request, String url, byte[] body) throws IOException {
+            // HttpClient takes any method with any body, HttpURLConnection can't do PATCH or DELETE with a body
+            RequestBuilder forwarded = RequestBuilder.create(request.getMethod()).setUri(target.resolve(url));
+            for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+                String name = names.nextElement();
+                if (!NOT_RECORDED_HEADERS.contains(name) && !"Accept-Encoding".equalsIgnoreCase(name)) {
+                    for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements(); ) {
+                        forwarded.addHeader(name, values.nextElement());
+                    }
+                }
+            }
+            if (body.length > 0) {
+                forwarded.setEntity(new ByteArrayEntity(body));
+            }
+
+            try (CloseableHttpResponse response = client.execute(forwarded.build())) {
+                List<String[]> headers = new ArrayList<>();
+                for (Header header : response.getAllHeaders()) {
+                    if (!NOT_RECORDED_HEADERS.contains(header.getName())) {
+                        headers.add(new String[]{header.getName(), header.getValue()});
+                    }
+                }
+                byte[] responseBody = new byte[0];
+                HttpEntity entity = response.getEntity();
+                if (entity != null) {
+                    try (InputStream content = entity.getContent()) {
+                        InputStream in = content;
+                        // Accept-Encoding is not forwarded, but some servers compress anyway. Bodies are recorded decoded
+                        Header encoding = response.getFirstHeader("Content-Encoding");
+                        if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                            in = new GZIPInputStream(content);
+                        }
+                        responseBody = StreamUtils.copyToByteArray(in);
+                    }
+                }
+                return new RecordedResponse(response.getStatusLine().getStatusCode(), headers, responseBody);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.thomascook.jfq.http.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.matching.EqualToJsonPattern;
+import com.thomascook.jfq.http.RequestBean;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.jsonResponse;
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.like;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.patch;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Records exchanges with WireMock stubbed the same way as in {@link com.thomascook.jfq.http.RestTemplateExamples},
+ * just many more of them, and replays them without WireMock.
+ */
+public class ReplayServerExamples {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayServerExamples.class);
+
+    private static final int STUBS = 1000;
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 2000;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private String requestJson(int i) {
+        return "{\"field1\":\"value" + i + "\",\"field2\":" + i + "}";
+    }
+
+    /**
+     * Same content, different order of the fields
+     */
+    private String reorderedRequestJson(int i) {
+        return "{ \"field2\": " + i + ", \"field1\": \"value" + i + "\" }";
+    }
+
+    private void stubAll() {
+        for (int i = 0; i < STUBS; i++) {
+            wireMockRule.stubFor(
+                    post(urlPathMatching("/"))
+                            .withRequestBody(new EqualToJsonPattern(requestJson(i), false, false)).willReturn(
+                            like(jsonResponse(new RequestBean("some text", i)))
+                    ));
+        }
+    }
+
+    @Test
+    public void recordAndReplay() throws Exception {
+        stubAll();
+
+        ReplayServer recorder = ReplayServer.recording(URI.create("http://localhost:" + wireMockRule.port())).start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < STUBS; i++) {
+                assertEquals(i, send(client, recorder.baseUri(), requestJson(i)));
+            }
+        } finally {
+            recorder.stop();
+        }
+
+        Path file = temporaryFolder.getRoot().toPath().resolve("corpus.bin");
+        recorder.getCorpus().save(file);
+        LOG.info("{} exchanges take {} bytes on disk", recorder.getCorpus().size(), Files.size(file));
+
+        ReplayServer replayer = ReplayServer.replaying(ReplayCorpus.load(file)).start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < STUBS; i++) {
+                assertEquals(i, send(client, replayer.baseUri(), reorderedRequestJson(i)));
+            }
+        } finally {
+            replayer.stop();
+        }
+    }
+
+    /**
+     * Redirect is an exchange of its own, the replayed one sends the client to the same place
+     */
+    @Test
+    public void redirectIsRecordedAsIs() throws Exception {
+        wireMockRule.stubFor(get(urlPathEqualTo("/old")).willReturn(aResponse().withStatus(301).withHeader("Location", "/new")));
+        wireMockRule.stubFor(get(urlPathEqualTo("/new")).willReturn(like(jsonResponse(new RequestBean("moved", 301)))));
+
+        ReplayServer recorder = ReplayServer.recording(URI.create("http://localhost:" + wireMockRule.port())).start();
+        try (CloseableHttpClient client = HttpClients.custom().disableRedirectHandling().build()) {
+            assertRedirect(client, recorder.baseUri());
+        } finally {
+            recorder.stop();
+        }
+        assertEquals(1, recorder.getCorpus().size());
+
+        ReplayServer replayer = ReplayServer.replaying(recorder.getCorpus()).start();
+        try (CloseableHttpClient client = HttpClients.custom().disableRedirectHandling().build()) {
+            assertRedirect(client, replayer.baseUri());
+        } finally {
+            replayer.stop();
+        }
+    }
+
+    @Test
+    public void patchRoundTrip() throws Exception {
+        wireMockRule.stubFor(patch(urlPathEqualTo("/patched"))
+                .withRequestBody(new EqualToJsonPattern(requestJson(7), false, false))
+                .willReturn(like(jsonResponse(new RequestBean("patched", 7)))));
+
+        ReplayServer recorder = ReplayServer.recording(URI.create("http://localhost:" + wireMockRule.port())).start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            assertEquals(7, sendPatch(client, recorder.baseUri(), requestJson(7)));
+        } finally {
+            recorder.stop();
+        }
+
+        ReplayServer replayer = ReplayServer.replaying(recorder.getCorpus()).start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            assertEquals(7, sendPatch(client, replayer.baseUri(), reorderedRequestJson(7)));
+        } finally {
+            replayer.stop();
+        }
+    }
+
+    /**
+     * Way over 64K of URL and header, which is more than DataOutputStream#writeUTF can take
+     */
+    @Test
+    public void longUrlAndHeaderSurviveSaving() throws Exception {
+        String query = StringUtils.repeat("q=long-query-value&", 5000);
+        String cookie = StringUtils.repeat("session=long-cookie-value;", 5000);
+        ReplayCorpus corpus = new ReplayCorpus();
+        ExchangeKey key = ReplayCorpus.keyOf("GET", "/search?" + query, new byte[0]);
+        corpus.record(key, new RecordedResponse(200, Collections.singletonList(new String[]{"Set-Cookie", cookie}),
+                "found".getBytes(StandardCharsets.UTF_8)));
+
+        Path file = temporaryFolder.getRoot().toPath().resolve("long.bin");
+        corpus.save(file);
+        RecordedResponse loaded = ReplayCorpus.load(file).find(key);
+
+        assertEquals(cookie, loaded.getHeaders().get(0)[1]);
+        assertEquals("found", new String(loaded.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private int sendPatch(CloseableHttpClient client, URI uri, String json) throws Exception {
+        HttpPatch httpPatch = new HttpPatch(uri.resolve("/patched"));
+        httpPatch.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = client.execute(httpPatch)) {
+            String responseString = EntityUtils.toString(response.getEntity());
+            assertEquals(responseString, 200, response.getStatusLine().getStatusCode());
+            return objectMapper.readTree(responseString).get("number").asInt();
+        }
+    }
+
+    private void assertRedirect(CloseableHttpClient client, URI uri) throws Exception {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(uri.resolve("/old")))) {
+            assertEquals(301, response.getStatusLine().getStatusCode());
+            assertEquals("/new", response.getFirstHeader("Location").getValue());
+        }
+    }
+
+    /**
+     * Not a proper benchmark, but the difference is big enough to be seen anyway
+     */
+    @Test
+    public void compareWithWireMock() throws Exception {
+        stubAll();
+        ReplayServer recorder = ReplayServer.recording(URI.create("http://localhost:" + wireMockRule.port())).start();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < STUBS; i++) {
+                send(client, recorder.baseUri(), requestJson(i));
+            }
+        } finally {
+            recorder.stop();
+        }
+
+        ReplayServer replayer = ReplayServer.replaying(recorder.getCorpus()).start();
+        try {
+            long wireMock = runConcurrently(URI.create("http://localhost:" + wireMockRule.port()));
+            long replay = runConcurrently(replayer.baseUri());
+            LOG.info("{} stubs, {} requests: WireMock {} req/s, replay server {} req/s",
+                    STUBS, REQUESTS, REQUESTS * 1000L / Math.max(1, wireMock), REQUESTS * 1000L / Math.max(1, replay));
+        } finally {
+            replayer.stop();
+        }
+    }
+
+    private long runConcurrently(URI uri) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (CloseableHttpClient client = HttpClients.custom().setMaxConnPerRoute(THREADS).setMaxConnTotal(THREADS).build()) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                tasks.add(() -> {
+                    for (int i = offset; i < REQUESTS; i += THREADS) {
+                        int stub = i % STUBS;
+                        assertEquals(stub, send(client, uri, requestJson(stub)));
+                    }
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private int send(CloseableHttpClient client, URI uri, String json) throws Exception {
+        HttpPost httpPost = new HttpPost(uri.resolve("/"));
+        httpPost.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = client.execute(httpPost)) {
+            String responseString = EntityUtils.toString(response.getEntity());
+            assertEquals(responseString, 200, response.getStatusLine().getStatusCode());
+            return objectMapper.readTree(responseString).get("number").asInt();
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.thomascook.jfq.lambdas;
 
-import org.apache.commons.lang3.RandomUtils;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
 import static org.apache.commons.lang3.StringUtils.*;
 
 public enum Action {
 
     CHASES, EATS, LIKES, CALLS, HATES, JUMPS_ON;
 
+    // values() clones the array on every call
+    private static final Action[] VALUES = values();
+
+    private final String label = replace(lowerCase(name()), "_", SPACE);
+
     public static Action random(){
-        return Action.values()[RandomUtils.nextInt(0, Action.values().length)];
+        return VALUES[ThreadLocalRandom.current().nextInt(VALUES.length)];
+    }
+
+    /**
+     * For callers that keep their own random source, e.g. one {@link SplittableRandom#split()} per thread
+     */
+    public static Action random(SplittableRandom random){
+        return VALUES[random.nextInt(VALUES.length)];
     }
 
     public String toString(){
-        return replace(lowerCase(this.name()), "_", SPACE);
+        return label;
     }
 }
@@ -0,0 +1,145 @@
+package com.thomascook.jfq.lambdas;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Column store for {@link Animal}s. Instead of an object per animal there are two int columns with ids of kind and
+ * description in the corresponding dictionaries. Tens of millions of animals take 8 bytes each, and grouping works
+ * on ints only: no hashing of strings, no boxing, no per-group lists.
+ * <p>
+ * Adding is not thread safe, reading and grouping are as long as nothing is being added.
+ */
+public class AnimalColumns {
+
+    // smaller chunks don't pay off the cost of a fork-join task
+    private static final int MIN_CHUNK = 64 * 1024;
+
+    private final StringDictionary kinds = new StringDictionary();
+    private final StringDictionary descriptions = new StringDictionary();
+
+    private int[] kindColumn;
+    private int[] descriptionColumn;
+    private int size;
+
+    public AnimalColumns() {
+        this(16);
+    }
+
+    public AnimalColumns(int expectedSize) {
+        Validate.isTrue(expectedSize >= 0);
+        kindColumn = new int[expectedSize];
+        descriptionColumn = new int[expectedSize];
+    }
+
+    public static AnimalColumns of(Collection<Animal> animals) {
+        AnimalColumns columns = new AnimalColumns(animals.size());
+        animals.forEach(columns::add);
+        return columns;
+    }
+
+    public AnimalColumns add(Animal animal) {
+        Validate.notNull(animal);
+        return add(animal.getKind(), animal.getDescription());
+    }
+
+    public AnimalColumns add(String kind, String description) {
+        if (size == kindColumn.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            kindColumn = Arrays.copyOf(kindColumn, capacity);
+            descriptionColumn = Arrays.copyOf(descriptionColumn, capacity);
+        }
+        kindColumn[size] = kinds.encode(kind);
+        descriptionColumn[size] = descriptions.encode(description);
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a new object, don't use it in hot loops
+     */
+    public Animal get(int index) {
+        Validate.isTrue(index >= 0 && index < size, "Index %d is out of range", index);
+        return new Animal(kinds.decode(kindColumn[index]), descriptions.decode(descriptionColumn[index]));
+    }
+
+    public String kindName(int kindId) {
+        return kinds.decode(kindId);
+    }
+
+    /**
+     * @return all known colours, index in the list is the description id
+     */
+    public List<String> colours() {
+        return descriptions.values();
+    }
+
+    /**
+     * Number of animals of every colour, indexed by description id. Per-thread counters are merged at the end, so
+     * threads don't contend.
+     */
+    public int[] countByColour() {
+        int colours = descriptions.size();
+        return IntStream.range(0, size).parallel().collect(
+                () -> new int[colours],
+                (counts, row) -> counts[descriptionColumn[row]]++,
+                (left, right) -> {
+                    for (int i = 0; i < colours; i++) {
+                        left[i] += right[i];
+                    }
+                });
+    }
+
+    /**
+     * Parallel counterpart of {@code groupingBy(Animal::getDescription, mapping(Animal::getKind, toList()))}.
+     * Counting sort in two passes: every chunk counts its colours, prefix sums give every chunk its own place in
+     * every group, then chunks copy kind ids to their places without any synchronization.
+     */
+    public ColourGroups groupKindsByColour() {
+        int colours = descriptions.size();
+        int chunks = Math.max(1, Math.min(size / MIN_CHUNK, ForkJoinPool.getCommonPoolParallelism() * 4));
+        // histograms take chunks * colours ints, don't let them outgrow the columns
+        chunks = Math.max(1, Math.min(chunks, size / Math.max(1, colours)));
+        int chunkSize = (size + chunks - 1) / Math.max(1, chunks);
+        int[][] positions = new int[chunks][];
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] histogram = new int[colours];
+            for (int row = chunk * chunkSize, end = Math.min(size, row + chunkSize); row < end; row++) {
+                histogram[descriptionColumn[row]]++;
+            }
+            positions[chunk] = histogram;
+        });
+
+        int[] offsets = new int[colours + 1];
+        int position = 0;
+        for (int colour = 0; colour < colours; colour++) {
+            offsets[colour] = position;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int count = positions[chunk][colour];
+                positions[chunk][colour] = position;
+                position += count;
+            }
+        }
+        offsets[colours] = position;
+
+        int[] kindIds = new int[size];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] next = positions[chunk];
+            for (int row = chunk * chunkSize, end = Math.min(size, row + chunkSize); row < end; row++) {
+                kindIds[next[descriptionColumn[row]]++] = kindColumn[row];
+            }
+        });
+
+        return new ColourGroups(descriptions, kinds, offsets, kindIds);
+    }
+}
@@ -0,0 +1,104 @@
+package com.thomascook.jfq.lambdas;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.groupingByConcurrent;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AnimalColumnsTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnimalColumnsTest.class);
+
+    private static final String[] KINDS = {"crocodile", "sheep", "dog", "cow", "cat", "mouse", "lion", "antelope"};
+    private static final String[] COLOURS = {"green", "white", "brown", "red", "black", "grey"};
+
+    @Test
+    public void groupLikeMethodReferenceTask() {
+        // same animals as in LambdasTest#testMethodReference
+        AnimalColumns columns = AnimalColumns.of(Arrays.asList(
+                new Animal("crocodile", "green"),
+                new Animal("sheep", "white"),
+                new Animal("dog", "brown"),
+                new Animal("cow", "brown")
+        ));
+
+        ColourGroups result = columns.groupKindsByColour();
+
+        assertEquals(2, result.kinds("brown").size());
+        assertEquals(1, result.kinds("green").size());
+        assertEquals("crocodile", result.kinds("green").get(0));
+        assertEquals(0, result.count("purple"));
+    }
+
+    @Test
+    public void sameResultAsGroupingBy() {
+        List<Animal> animals = randomAnimals(500_000);
+        AnimalColumns columns = AnimalColumns.of(animals);
+
+        Map<String, List<String>> expected = animals.stream()
+                .collect(groupingBy(Animal::getDescription, mapping(Animal::getKind, toList())));
+
+        assertEquals(expected, columns.groupKindsByColour().toMap());
+
+        int[] counts = columns.countByColour();
+        for (String colour : expected.keySet()) {
+            assertEquals(expected.get(colour).size(), counts[columns.colours().indexOf(colour)]);
+        }
+    }
+
+    @Test
+    public void emptyStore() {
+        AnimalColumns columns = new AnimalColumns();
+        assertEquals(0, columns.groupKindsByColour().toMap().size());
+        assertArrayEquals(new int[0], columns.countByColour());
+    }
+
+    /**
+     * Not a proper benchmark (no forks, few iterations) but shows the order of magnitude
+     */
+    @Test
+    public void compareWithStreamCollectors() {
+        List<Animal> animals = randomAnimals(2_000_000);
+        AnimalColumns columns = AnimalColumns.of(animals);
+
+        measure("groupingBy", () -> animals.stream()
+                .collect(groupingBy(Animal::getDescription, mapping(Animal::getKind, toList()))));
+        measure("parallel groupingByConcurrent", () -> animals.parallelStream()
+                .collect(groupingByConcurrent(Animal::getDescription, mapping(Animal::getKind, toList()))));
+        measure("columnar groupKindsByColour", columns::groupKindsByColour);
+        measure("columnar countByColour", columns::countByColour);
+    }
+
+    private void measure(String name, Supplier<?> grouping) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            grouping.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        LOG.info("{}: best of 5 is {} ms", name, TimeUnit.NANOSECONDS.toMillis(best));
+    }
+
+    private List<Animal> randomAnimals(int count) {
+        Random random = new Random(42);
+        List<Animal> animals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            animals.add(new Animal(KINDS[random.nextInt(KINDS.length)], COLOURS[random.nextInt(COLOURS.length)]));
+        }
+        return animals;
+    }
+}
@@ -0,0 +1,311 @@
+package com.thomascook.jfq.lambdas;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same thing {@link LambdasTest#testBasicStreamAPI()} asks for (decode Base64 words, leave only those without 'z'
+ * and 'Z'), but for newline-delimited files of any size.
+ * <p>
+ * The input is split into line-aligned chunks, every chunk is memory-mapped and processed by a fork-join worker.
+ * Workers decode straight from the mapped buffer into pooled byte arrays and check decoded bytes for 'z'/'Z' without
+ * creating a String per word. It is safe for UTF-8 text since bytes of multi-byte characters are never ASCII.
+ * Chunks are written in the input order, and only a bounded number of them is in flight, so memory usage doesn't
+ * depend on the file size.
+ */
+public class Base64WordPipeline {
+
+    private static final int[] DECODE = new int[256];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final BlockingQueue<byte[]> buffers;
+
+    public Base64WordPipeline() {
+        this(ForkJoinPool.commonPool(), 8 * 1024 * 1024);
+    }
+
+    /**
+     * @param chunkSize approximate size of the chunk in bytes, actual chunk ends at the next line break
+     */
+    public Base64WordPipeline(ForkJoinPool pool, int chunkSize) {
+        Validate.notNull(pool);
+        Validate.isTrue(chunkSize > 0);
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = pool.getParallelism() * 2;
+        this.buffers = new ArrayBlockingQueue<>(maxInFlight + 1);
+    }
+
+    public Stats run(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        long wordsIn = 0;
+        long wordsOut = 0;
+        long bytesOut = 0;
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            long position = 0;
+            while (position < size || !inFlight.isEmpty()) {
+                while (position < size && inFlight.size() < maxInFlight) {
+                    long end = nextLineStart(in, Math.min(size, position + chunkSize));
+                    inFlight.addLast(pool.submit(new ChunkTask(in, position, chunkLength(position, end))));
+                    position = end;
+                }
+
+                // the head of the queue is the oldest chunk, so the output keeps the input order
+                Chunk chunk = inFlight.removeFirst().join();
+                ByteBuffer result = ByteBuffer.wrap(chunk.buffer, 0, chunk.length);
+                while (result.hasRemaining()) {
+                    out.write(result);
+                }
+                wordsIn += chunk.wordsIn;
+                wordsOut += chunk.wordsOut;
+                bytesOut += chunk.length;
+                buffers.offer(chunk.buffer);
+            }
+            return new Stats(size, bytesOut, wordsIn, wordsOut, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return position right after the first line break at or after the given one, or the end of the file
+     */
+    private long nextLineStart(FileChannel in, long position) throws IOException {
+        long size = in.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int read = in.read(probe, position);
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Chunks end at line breaks only, so a single huge line makes a chunk of that size. Neither a mapped buffer nor
+     * a byte array can go over 2 GB.
+     */
+    static int chunkLength(long start, long end) {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Line starting before byte " + start + " is longer than "
+                    + Integer.MAX_VALUE + " bytes");
+        }
+        return (int) (end - start);
+    }
+
+    private byte[] borrowBuffer(int minSize) {
+        byte[] buffer = buffers.poll();
+        return buffer != null && buffer.length >= minSize ? buffer : new byte[Math.max(minSize, chunkSize)];
+    }
+
+    /**
+     * Leaf task that never forks, so a plain Callable is enough
+     */
+    private class ChunkTask implements Callable<Chunk> {
+
+        private final FileChannel in;
+        private final long start;
+        private final int length;
+
+        ChunkTask(FileChannel in, long start, int length) {
+            this.in = in;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public Chunk call() {
+            try {
+                // not unmapped on purpose: there is no public API for that in Java 8, the mapping goes away when GC
+                // collects the buffer. Only chunks in flight are referenced, so the address space used stays bounded
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+                // decoded word is shorter than the encoded one, so the output never outgrows the input
+                return decodeAndFilter(mapped, borrowBuffer(length), start);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't read bytes " + start + "-" + (start + length), e);
+            }
+        }
+    }
+
+    static Chunk decodeAndFilter(ByteBuffer encoded, byte[] target, long offset) {
+        int length = encoded.limit();
+        int out = 0;
+        long wordsIn = 0;
+        long wordsOut = 0;
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && encoded.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int wordEnd = lineEnd;
+            if (wordEnd > lineStart && encoded.get(wordEnd - 1) == '\r') {
+                wordEnd--;
+            }
+
+            int wordStart = out;
+            out = decodeWord(encoded, lineStart, wordEnd, target, out, offset);
+            wordsIn++;
+            if (containsZ(target, wordStart, out)) {
+                out = wordStart;
+            } else {
+                target[out++] = '\n';
+                wordsOut++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new Chunk(target, out, wordsIn, wordsOut);
+    }
+
+    /**
+     * Same alphabet and padding rules as {@link java.util.Base64#getDecoder()}
+     *
+     * @return position in the target right after the decoded bytes
+     */
+    private static int decodeWord(ByteBuffer encoded, int from, int to, byte[] target, int out, long offset) {
+        int bits = 0;
+        int count = 0;
+        int padding = 0;
+        for (int i = from; i < to; i++) {
+            int b = encoded.get(i) & 0xff;
+            if (b == '=') {
+                padding++;
+                continue;
+            }
+            int value = DECODE[b];
+            if (value < 0 || padding > 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(b)
+                        + " at byte " + (offset + i));
+            }
+            bits = (bits << 6) | value;
+            if (++count == 4) {
+                target[out++] = (byte) (bits >> 16);
+                target[out++] = (byte) (bits >> 8);
+                target[out++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1 || padding > 2 || (padding > 0 && count + padding != 4)) {
+            throw new IllegalArgumentException("Wrong base64 word ending at byte " + (offset + to));
+        }
+        if (count == 2) {
+            target[out++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            target[out++] = (byte) (bits >> 10);
+            target[out++] = (byte) (bits >> 2);
+        }
+        return out;
+    }
+
+    private static boolean containsZ(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ((bytes[i] | 0x20) == 'z') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Chunk {
+
+        final byte[] buffer;
+        final int length;
+        final long wordsIn;
+        final long wordsOut;
+
+        Chunk(byte[] buffer, int length, long wordsIn, long wordsOut) {
+            this.buffer = buffer;
+            this.length = length;
+            this.wordsIn = wordsIn;
+            this.wordsOut = wordsOut;
+        }
+    }
+
+    public static class Stats {
+
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long wordsIn;
+        private final long wordsOut;
+        private final long nanos;
+
+        Stats(long bytesIn, long bytesOut, long wordsIn, long wordsOut, long nanos) {
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.wordsIn = wordsIn;
+            this.wordsOut = wordsOut;
+            this.nanos = nanos;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getWordsIn() {
+            return wordsIn;
+        }
+
+        public long getWordsOut() {
+            return wordsOut;
+        }
+
+        /**
+         * @return input megabytes (10^6 bytes) per second
+         */
+        public double getThroughput() {
+            return bytesIn / 1e6 / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "bytesIn=" + bytesIn +
+                    ", bytesOut=" + bytesOut +
+                    ", wordsIn=" + wordsIn +
+                    ", wordsOut=" + wordsOut +
+                    ", millis=" + TimeUnit.NANOSECONDS.toMillis(nanos) +
+                    ", MB/s=" + String.format("%.1f", getThroughput()) +
+                    '}';
+        }
+    }
+}
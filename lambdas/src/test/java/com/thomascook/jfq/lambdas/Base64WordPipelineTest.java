@@ -0,0 +1,95 @@
+package com.thomascook.jfq.lambdas;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class Base64WordPipelineTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Base64WordPipelineTest.class);
+
+    // same words as in LambdasTest#testBasicStreamAPI
+    private static final List<String> WORDS = Arrays.asList("QW5k", "elpaeg==", "dGhpcw==", "aXM=", "b2xvbG96eg==", "aG93", "d2U=",
+            "a25vdw==", "RHpSTkdTZGZn", "dGhl", "d29ybGQ=", "dG8=", "YmU=", "YmFuYW5hLXNoYXBl");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameResultAsStreamApi() throws Exception {
+        Path input = writeWords(1000);
+        Path output = temporaryFolder.newFile().toPath();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Base64WordPipeline.Stats stats;
+        try {
+            // tiny chunks to make sure line boundaries between chunks are handled
+            stats = new Base64WordPipeline(pool, 100).run(input, output);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<String> expected = Files.readAllLines(input, StandardCharsets.UTF_8).stream()
+                .map(word -> new String(Base64.getDecoder().decode(word), StandardCharsets.UTF_8))
+                .filter(word -> !word.contains("z") && !word.contains("Z"))
+                .collect(Collectors.toList());
+
+        assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+        assertEquals(1000 * WORDS.size(), stats.getWordsIn());
+        assertEquals(1000 * 11, stats.getWordsOut());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void brokenInput() throws Exception {
+        Path input = temporaryFolder.newFile().toPath();
+        Files.write(input, "QW5k\nno-base64\n".getBytes(StandardCharsets.US_ASCII));
+
+        new Base64WordPipeline().run(input, temporaryFolder.newFile().toPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lineLongerThanArray() {
+        Base64WordPipeline.chunkLength(100, 100L + Integer.MAX_VALUE + 1);
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        Path input = writeWords(500_000);
+        Path output = temporaryFolder.newFile().toPath();
+
+        Base64WordPipeline pipeline = new Base64WordPipeline();
+        // first run warms up JIT
+        pipeline.run(input, output);
+        Base64WordPipeline.Stats stats = pipeline.run(input, output);
+
+        LOG.info("{}", stats);
+        assertEquals(500_000L * 11, stats.getWordsOut());
+    }
+
+    private Path writeWords(int times) throws Exception {
+        Path input = temporaryFolder.newFile().toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < times; i++) {
+                for (String word : WORDS) {
+                    writer.write(word);
+                    writer.write('\n');
+                }
+            }
+        }
+        return input;
+    }
+}
@@ -0,0 +1,90 @@
+package com.thomascook.jfq.lambdas;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Animal kinds grouped by colour (description) in a compact form: kind ids of all groups are stored in a single int
+ * array one group after another, {@code offsets[colour]} points to the start of the group. Inside the group kinds
+ * keep the order of animals in {@link AnimalColumns}, just like {@code Collectors.groupingBy} does.
+ */
+public class ColourGroups {
+
+    private final StringDictionary colours;
+    private final StringDictionary kinds;
+    private final int[] offsets;
+    private final int[] kindIds;
+
+    ColourGroups(StringDictionary colours, StringDictionary kinds, int[] offsets, int[] kindIds) {
+        this.colours = colours;
+        this.kinds = kinds;
+        this.offsets = offsets;
+        this.kindIds = kindIds;
+    }
+
+    /**
+     * Colours known at the moment of grouping
+     */
+    public List<String> colours() {
+        return colours.values().subList(0, offsets.length - 1);
+    }
+
+    public int count(String colour) {
+        int id = idOf(colour);
+        return id < 0 ? 0 : offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * @return ids of kinds, see {@link AnimalColumns#kindName(int)}
+     */
+    public int[] kindIds(String colour) {
+        int id = idOf(colour);
+        return id < 0 ? new int[0] : Arrays.copyOfRange(kindIds, offsets[id], offsets[id + 1]);
+    }
+
+    /**
+     * @return view of the group, names are decoded on access
+     */
+    public List<String> kinds(String colour) {
+        int id = idOf(colour);
+        int from = id < 0 ? 0 : offsets[id];
+        int to = id < 0 ? 0 : offsets[id + 1];
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || from + index >= to) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+                }
+                return kinds.decode(kindIds[from + index]);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    // the store may have got new colours after grouping
+    private int idOf(String colour) {
+        int id = colours.idOf(colour);
+        return id < offsets.length - 1 ? id : -1;
+    }
+
+    /**
+     * Same thing {@code groupingBy(Animal::getDescription, mapping(Animal::getKind, toList()))} produces.
+     * Defeats the purpose for big stores, mostly useful for comparison.
+     */
+    public Map<String, List<String>> toMap() {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (String colour : colours()) {
+            if (count(colour) > 0) {
+                result.put(colour, kinds(colour));
+            }
+        }
+        return result;
+    }
+}
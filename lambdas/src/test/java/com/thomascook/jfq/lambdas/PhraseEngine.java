@@ -0,0 +1,86 @@
+package com.thomascook.jfq.lambdas;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates phrases about random pairs of animals doing random {@link Action}s in bulk.
+ * <p>
+ * Every thread gets its own {@link SplittableRandom} split from the seed, so threads don't contend on a shared
+ * {@code Random} the way {@link org.apache.commons.lang3.RandomUtils} does. Phrases are appended to the caller's
+ * buffer: with a presized {@link StringBuilder} generating a batch doesn't allocate anything. The sequence of phrases
+ * is reproducible for the same seed as long as the engine is used by a single thread.
+ */
+public class PhraseEngine {
+
+    private final PhraseTemplate template;
+    private final Animal[] animals;
+    private final SplittableRandom seed;
+    private final ThreadLocal<SplittableRandom> random = ThreadLocal.withInitial(this::split);
+
+    public PhraseEngine(List<Animal> animals, long seed) {
+        this(PhraseTemplate.compile(PhraseTemplate.DEFAULT), animals, seed);
+    }
+
+    public PhraseEngine(PhraseTemplate template, List<Animal> animals, long seed) {
+        Validate.notNull(template);
+        Validate.notEmpty(animals);
+        Validate.noNullElements(animals);
+        this.template = template;
+        this.animals = animals.toArray(new Animal[animals.size()]);
+        this.seed = new SplittableRandom(seed);
+    }
+
+    private synchronized SplittableRandom split() {
+        return seed.split();
+    }
+
+    /**
+     * Appends {@code count} phrases, every one followed by a line break
+     */
+    public void generate(StringBuilder out, int count) {
+        Validate.isTrue(count >= 0);
+        SplittableRandom random = this.random.get();
+        for (int i = 0; i < count; i++) {
+            template.appendTo(out, animal(random), animal(random), Action.random(random));
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Same as {@link #generate(StringBuilder, int)} for writers, channels etc. Whether it allocates depends on
+     * {@code out}.
+     */
+    public void generate(Appendable out, int count) throws IOException {
+        Validate.isTrue(count >= 0);
+        SplittableRandom random = this.random.get();
+        for (int i = 0; i < count; i++) {
+            template.appendTo(out, animal(random), animal(random), Action.random(random));
+            out.append('\n');
+        }
+    }
+
+    /**
+     * @return capacity of a StringBuilder big enough for {@code count} phrases, so that it never grows
+     */
+    public int capacityFor(int count) {
+        int longest = 0;
+        for (Animal animal : animals) {
+            longest = Math.max(longest, Math.max(animal.getKind().length(), animal.getDescription().length()));
+        }
+        for (Action action : Action.values()) {
+            longest = Math.max(longest, action.toString().length());
+        }
+        // +1 for the line break
+        long perPhrase = template.maxLength(longest) + 1;
+        Validate.isTrue(perPhrase * count <= Integer.MAX_VALUE, "%d phrases don't fit into a StringBuilder", count);
+        return (int) (perPhrase * count);
+    }
+
+    private Animal animal(SplittableRandom random) {
+        return animals[random.nextInt(animals.length)];
+    }
+}
@@ -0,0 +1,105 @@
+package com.thomascook.jfq.lambdas;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhraseEngineTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhraseEngineTest.class);
+
+    private static final List<Animal> ANIMALS = Arrays.asList(
+            new Animal("crocodile", "green"),
+            new Animal("sheep", "white"),
+            new Animal("dog", "brown"),
+            new Animal("cow", "brown"),
+            new Animal("cat", "red")
+    );
+
+    @Test
+    public void defaultTemplate() {
+        PhraseBuilder phraseBuilder = PhraseTemplate.compile(PhraseTemplate.DEFAULT);
+
+        // same as LambdasTest#testCustomFunctionalInterface
+        assertEquals("brown cow likes the red cat",
+                phraseBuilder.biuld(new Animal("cow", "brown"), new Animal("cat", "red"), Action.LIKES));
+    }
+
+    @Test
+    public void customTemplate() {
+        PhraseBuilder phraseBuilder = PhraseTemplate.compile("{first.kind} {action} {second.kind}!");
+
+        assertEquals("cow jumps on cat!",
+                phraseBuilder.biuld(new Animal("cow", "brown"), new Animal("cat", "red"), Action.JUMPS_ON));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPlaceholder() {
+        PhraseTemplate.compile("{first.name} {action}");
+    }
+
+    @Test
+    public void sameSeedSamePhrases() {
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+
+        new PhraseEngine(ANIMALS, 42).generate(first, 100);
+        new PhraseEngine(ANIMALS, 42).generate(second, 100);
+
+        assertEquals(first.toString(), second.toString());
+        assertEquals(100, first.toString().split("\n").length);
+    }
+
+    @Test
+    public void capacityIsEnough() {
+        PhraseEngine engine = new PhraseEngine(ANIMALS, 42);
+        int capacity = engine.capacityFor(10_000);
+        StringBuilder out = new StringBuilder(capacity);
+
+        engine.generate(out, 10_000);
+
+        assertEquals(capacity, out.capacity());
+    }
+
+    @Test
+    public void batchDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PhraseEngine engine = new PhraseEngine(ANIMALS, 42);
+        int count = 1_000_000;
+        StringBuilder out = new StringBuilder(engine.capacityFor(count));
+        // warm up, so that the measured run is compiled and escape analysis has kicked in
+        for (int i = 0; i < 5; i++) {
+            out.setLength(0);
+            engine.generate(out, count);
+        }
+
+        out.setLength(0);
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        engine.generate(out, count);
+        long engineTime = System.nanoTime() - start;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+        PhraseBuilder lambda = (first, second, action) ->
+                first.getDescription() + " " + first.getKind() + " " + action + " the " + second.getDescription() + " " + second.getKind();
+        StringBuilder naive = new StringBuilder();
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            naive.append(lambda.biuld(ANIMALS.get(i % ANIMALS.size()), ANIMALS.get(i % 3), Action.random())).append('\n');
+        }
+        long lambdaTime = System.nanoTime() - start;
+
+        LOG.info("{} phrases: engine {} ms, {} bytes allocated; lambda with concatenation {} ms", count,
+                TimeUnit.NANOSECONDS.toMillis(engineTime), allocated, TimeUnit.NANOSECONDS.toMillis(lambdaTime));
+        // a phrase would take at least 40 bytes, a few KB is the measurement itself
+        assertTrue("Allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+}
@@ -0,0 +1,121 @@
+package com.thomascook.jfq.lambdas;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PhraseBuilder} compiled from a template like {@link #DEFAULT}. The template is parsed once into a list of
+ * parts, appending a phrase is just appending those parts one after another, nothing is formatted or concatenated.
+ * <p>
+ * Placeholders are {@code {first.kind}}, {@code {first.description}}, {@code {action}}, {@code {second.kind}} and
+ * {@code {second.description}}, everything else is copied as is. Immutable and thread safe.
+ */
+public class PhraseTemplate implements PhraseBuilder {
+
+    /**
+     * The phrase {@link LambdasTest#testCustomFunctionalInterface()} expects
+     */
+    public static final String DEFAULT = "{first.description} {first.kind} {action} the {second.description} {second.kind}";
+
+    private final String template;
+    private final Part[] parts;
+    private final int literalLength;
+    private final int placeholders;
+
+    private PhraseTemplate(String template, Part[] parts, int literalLength, int placeholders) {
+        this.template = template;
+        this.parts = parts;
+        this.literalLength = literalLength;
+        this.placeholders = placeholders;
+    }
+
+    public static PhraseTemplate compile(String template) {
+        Validate.notNull(template);
+        List<Part> parts = new ArrayList<>();
+        int literalLength = 0;
+        int placeholders = 0;
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            if (open < 0) {
+                open = template.length();
+            }
+            if (open > position) {
+                String literal = template.substring(position, open);
+                parts.add((first, second, action) -> literal);
+                literalLength += literal.length();
+            }
+            if (open == template.length()) {
+                break;
+            }
+            int close = template.indexOf('}', open);
+            Validate.isTrue(close > 0, "Unclosed placeholder at %d in '%s'", open, template);
+            parts.add(placeholder(template.substring(open + 1, close)));
+            placeholders++;
+            position = close + 1;
+        }
+        return new PhraseTemplate(template, parts.toArray(new Part[parts.size()]), literalLength,
+                placeholders);
+    }
+
+    private static Part placeholder(String name) {
+        switch (name) {
+            case "first.kind":
+                return (first, second, action) -> first.getKind();
+            case "first.description":
+                return (first, second, action) -> first.getDescription();
+            case "action":
+                // toString is a cached label
+                return (first, second, action) -> action.toString();
+            case "second.kind":
+                return (first, second, action) -> second.getKind();
+            case "second.description":
+                return (first, second, action) -> second.getDescription();
+            default:
+                throw new IllegalArgumentException("Unknown placeholder {" + name + "}");
+        }
+    }
+
+    public void appendTo(Appendable out, Animal first, Animal second, Action action) throws IOException {
+        for (Part part : parts) {
+            out.append(part.value(first, second, action));
+        }
+    }
+
+    public void appendTo(StringBuilder out, Animal first, Animal second, Action action) {
+        for (Part part : parts) {
+            out.append(part.value(first, second, action));
+        }
+    }
+
+    /**
+     * @param longestValue length of the longest kind, description or action label
+     * @return upper bound of the phrase length, handy for presizing buffers
+     */
+    public long maxLength(int longestValue) {
+        return literalLength + (long) placeholders * longestValue;
+    }
+
+    /**
+     * Creates a String per phrase, prefer {@link #appendTo(StringBuilder, Animal, Animal, Action)} in loops
+     */
+    @Override
+    public String biuld(Animal firstAnimal, Animal secondAnimal, Action action) {
+        StringBuilder builder = new StringBuilder(literalLength + placeholders * 8);
+        appendTo(builder, firstAnimal, secondAnimal, action);
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    @FunctionalInterface
+    private interface Part {
+        String value(Animal first, Animal second, Action action);
+    }
+}
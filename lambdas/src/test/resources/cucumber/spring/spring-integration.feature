@@ -1,4 +1,6 @@
 Feature: Cucumber-jvm Spring integration
 
+  # fails the scenario if it allocates more, see AllocationBudgetHooks
+  @MaxAllocatedMB=16
   Scenario: test
     Given test start
\ No newline at end of file